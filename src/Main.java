@@ -1,8 +1,18 @@
+import cli.Batch;
 import ui.MainWindow;
 
 public class Main {
 	public static void main(String[] args) {
+		// Any argument selects the headless batch mode, which never loads Swing
+		if (args.length > 0) {
+			Batch.main(args);
+			return;
+		}
+
+		startGui();
+	}
+
+	private static void startGui() {
 		MainWindow mainWindow = new MainWindow();
 	}
 }
-
@@ -0,0 +1,309 @@
+package algorithm;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import csv.Reader;
+import csv.WeatherRecord;
+
+/**
+ * External merge sort for weather CSVs that do not fit in the heap.
+ *
+ * The input is streamed in chunks bounded by a memory budget and a row count.
+ * Each chunk is sorted in memory with WeatherRecordSorter and spilled to a
+ * temporary run file. Runs are then combined with a k-way heap merge, at most
+ * fanIn runs at a time, until a single pass writes the output. Ties keep input
+ * order, so the sort is stable when the in-memory algorithm is.
+ */
+public class ExternalSorter {
+	// Rough heap cost of one parsed row beyond its characters: record, strings, array slot
+	private static final int ROW_OVERHEAD_BYTES = 200;
+	private static final int IO_BUFFER = 1 << 16;
+
+	private final WeatherRecordSorter recordSorter;
+	private long memoryBudget = 256L << 20;
+	private int runSize = Integer.MAX_VALUE;
+	private int fanIn = 64;
+	private String algorithm = "merge";
+	private File tempDir;
+
+	public ExternalSorter() {
+		this(new WeatherRecordSorter());
+	}
+
+	public ExternalSorter(WeatherRecordSorter recordSorter) {
+		this.recordSorter = recordSorter;
+	}
+
+	/**
+	 * Approximate bytes of parsed rows held in memory per run.
+	 */
+	public void setMemoryBudget(long memoryBudget) {
+		this.memoryBudget = Math.max(memoryBudget, 1);
+	}
+
+	/**
+	 * Maximum rows per run, applied together with the memory budget.
+	 */
+	public void setRunSize(int runSize) {
+		this.runSize = Math.max(runSize, 1);
+	}
+
+	/**
+	 * Maximum number of runs merged at once.
+	 */
+	public void setFanIn(int fanIn) {
+		this.fanIn = Math.max(fanIn, 2);
+	}
+
+	/**
+	 * In-memory algorithm used on each run, as accepted by WeatherRecordSorter.sortRecords.
+	 */
+	public void setAlgorithm(String algorithm) {
+		this.algorithm = algorithm;
+	}
+
+	/**
+	 * Directory for run files; null uses the system temporary directory.
+	 */
+	public void setTempDir(File tempDir) {
+		this.tempDir = tempDir;
+	}
+
+	public Report sort(File input, File output, Comparator<WeatherRecord> comparator) throws IOException {
+		Report report = new Report();
+		List<File> runs = new ArrayList<>();
+
+		try {
+			long start = System.nanoTime();
+			createRuns(input, comparator, runs, report);
+			report.runPhaseNanos = System.nanoTime() - start;
+			report.runs = runs.size();
+
+			start = System.nanoTime();
+			mergeRuns(runs, output, comparator, report);
+			report.mergePhaseNanos = System.nanoTime() - start;
+		} finally {
+			for (File run : runs)
+				run.delete();
+		}
+
+		return report;
+	}
+
+	/*
+	 * Phase 1: read bounded chunks, sort them in memory and spill each one as a run
+	 */
+	private void createRuns(File input, Comparator<WeatherRecord> comparator, List<File> runs, Report report) throws IOException {
+		try (BufferedReader in = new BufferedReader(new FileReader(input), IO_BUFFER)) {
+			String header = in.readLine();
+			if (header != null)
+				report.bytesRead += header.length() + 1;
+
+			ArrayList<WeatherRecord> chunk = new ArrayList<>();
+			long chunkBytes = 0;
+			String line;
+
+			while (true) {
+				long readStart = System.nanoTime();
+				line = in.readLine();
+				WeatherRecord record = line == null ? null : Reader.parseLine(line);
+				report.readNanos += System.nanoTime() - readStart;
+
+				if (line == null)
+					break;
+
+				report.bytesRead += line.length() + 1;
+				if (record == null) {
+					report.skippedRows++;
+					continue;
+				}
+
+				chunk.add(record);
+				chunkBytes += 2L * line.length() + ROW_OVERHEAD_BYTES;
+
+				if (chunk.size() >= runSize || chunkBytes >= memoryBudget) {
+					runs.add(spill(chunk, comparator, report));
+					chunk.clear();
+					chunkBytes = 0;
+				}
+			}
+
+			if (!chunk.isEmpty() || runs.isEmpty())
+				runs.add(spill(chunk, comparator, report));
+		}
+	}
+
+	private File spill(ArrayList<WeatherRecord> chunk, Comparator<WeatherRecord> comparator, Report report) throws IOException {
+		WeatherRecord[] records = chunk.toArray(new WeatherRecord[0]);
+
+		long sortStart = System.nanoTime();
+		recordSorter.sortRecords(records, comparator, algorithm);
+		report.sortNanos += System.nanoTime() - sortStart;
+
+		long writeStart = System.nanoTime();
+		File run = File.createTempFile("weather-run-", ".csv", tempDir);
+		run.deleteOnExit();
+
+		try (BufferedWriter out = new BufferedWriter(new FileWriter(run), IO_BUFFER)) {
+			for (WeatherRecord record : records) {
+				String line = record.toCsvLine();
+				out.write(line);
+				out.newLine();
+				report.bytesWritten += line.length() + 1;
+			}
+		}
+
+		report.rows += records.length;
+		report.spillNanos += System.nanoTime() - writeStart;
+		return run;
+	}
+
+	/*
+	 * Phase 2: merge at most fanIn runs at a time until one pass can write the output
+	 */
+	private void mergeRuns(List<File> runs, File output, Comparator<WeatherRecord> comparator, Report report) throws IOException {
+		List<File> level = new ArrayList<>(runs);
+
+		while (level.size() > fanIn) {
+			List<File> next = new ArrayList<>();
+
+			for (int i = 0; i < level.size(); i += fanIn) {
+				List<File> group = level.subList(i, Math.min(i + fanIn, level.size()));
+				if (group.size() == 1) {
+					next.add(group.get(0));
+					continue;
+				}
+
+				File merged = File.createTempFile("weather-run-", ".csv", tempDir);
+				merged.deleteOnExit();
+				runs.add(merged);
+
+				merge(group, merged, null, comparator, report);
+				next.add(merged);
+			}
+
+			level = next;
+			report.mergePasses++;
+		}
+
+		merge(level, output, Reader.CSV_HEADER, comparator, report);
+		report.mergePasses++;
+	}
+
+	private void merge(List<File> inputs, File output, String header, Comparator<WeatherRecord> comparator, Report report) throws IOException {
+		PriorityQueue<RunCursor> heap = new PriorityQueue<>(Math.max(inputs.size(), 1), (x, y) -> {
+			int cmp = comparator.compare(x.record, y.record);
+			return cmp != 0 ? cmp : Integer.compare(x.index, y.index);
+		});
+
+		try (BufferedWriter out = new BufferedWriter(new FileWriter(output), IO_BUFFER)) {
+			for (int i = 0; i < inputs.size(); ++i) {
+				RunCursor cursor = new RunCursor(inputs.get(i), i);
+				if (cursor.advance(report))
+					heap.add(cursor);
+				else
+					cursor.close();
+			}
+
+			if (header != null) {
+				out.write(header);
+				out.newLine();
+				report.bytesWritten += header.length() + 1;
+			}
+
+			while (!heap.isEmpty()) {
+				RunCursor cursor = heap.poll();
+				out.write(cursor.line);
+				out.newLine();
+				report.bytesWritten += cursor.line.length() + 1;
+
+				if (cursor.advance(report))
+					heap.add(cursor);
+				else
+					cursor.close();
+			}
+		} finally {
+			for (RunCursor cursor : heap)
+				cursor.close();
+		}
+	}
+
+	/*
+	 * Current line of one run file during a merge
+	 */
+	private static class RunCursor {
+		private final BufferedReader in;
+		private final int index;
+		private String line;
+		private WeatherRecord record;
+
+		RunCursor(File file, int index) throws IOException {
+			this.in = new BufferedReader(new FileReader(file), IO_BUFFER);
+			this.index = index;
+		}
+
+		boolean advance(Report report) throws IOException {
+			while ((line = in.readLine()) != null) {
+				report.bytesRead += line.length() + 1;
+				record = Reader.parseLine(line);
+				if (record != null)
+					return true;
+			}
+			return false;
+		}
+
+		void close() throws IOException {
+			in.close();
+		}
+	}
+
+	/**
+	 * Counters and phase timings of one external sort.
+	 */
+	public static class Report {
+		private long rows;
+		private long skippedRows;
+		private int runs;
+		private int mergePasses;
+		private long bytesRead;
+		private long bytesWritten;
+		private long readNanos;
+		private long sortNanos;
+		private long spillNanos;
+		private long runPhaseNanos;
+		private long mergePhaseNanos;
+
+		public long getRows() { return rows; }
+		public long getSkippedRows() { return skippedRows; }
+		public int getRuns() { return runs; }
+		public int getMergePasses() { return mergePasses; }
+		public long getBytesRead() { return bytesRead; }
+		public long getBytesWritten() { return bytesWritten; }
+		public long getReadNanos() { return readNanos; }
+		public long getSortNanos() { return sortNanos; }
+		public long getSpillNanos() { return spillNanos; }
+		public long getRunPhaseNanos() { return runPhaseNanos; }
+		public long getMergePhaseNanos() { return mergePhaseNanos; }
+
+		@Override
+		public String toString() {
+			return String.format("%d rows (%d skipped) in %d runs, %d merge passes%n" +
+					"  run phase   %.1f ms (read+parse %.1f ms, sort %.1f ms, spill %.1f ms)%n" +
+					"  merge phase %.1f ms%n" +
+					"  I/O         %.1f MB read, %.1f MB written",
+				rows, skippedRows, runs, mergePasses,
+				runPhaseNanos / 1e6, readNanos / 1e6, sortNanos / 1e6, spillNanos / 1e6,
+				mergePhaseNanos / 1e6,
+				bytesRead / 1e6, bytesWritten / 1e6);
+		}
+	}
+}
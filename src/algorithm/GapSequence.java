@@ -0,0 +1,112 @@
+package algorithm;
+
+import java.util.ArrayList;
+import java.util.Collections;
+
+/**
+ * Gap sequences for Shell sort.
+ *
+ * gaps(n) returns the gaps to use on an array of length n, largest first and,
+ * for n > 1, ending with 1. The sequence decides both the worst case and the
+ * practical speed of Sort.shell.
+ */
+public enum GapSequence {
+	/*
+	 * Shell (1959): n/2, n/4, ..., 1. O(n^2) worst case, kept for comparison
+	 */
+	SHELL {
+		@Override
+		public int[] gaps(int n) {
+			ArrayList<Integer> gaps = new ArrayList<>();
+			for (int gap = n / 2; gap > 0; gap /= 2)
+				gaps.add(gap);
+			return descending(gaps, false);
+		}
+	},
+
+	/*
+	 * Ciura (2001): empirically tuned up to 1750, extended by a factor of 2.25
+	 */
+	CIURA {
+		private final int[] base = {1, 4, 10, 23, 57, 132, 301, 701, 1750};
+
+		@Override
+		public int[] gaps(int n) {
+			ArrayList<Integer> gaps = new ArrayList<>();
+			for (int gap : base) {
+				if (gap >= n && !gaps.isEmpty()) break;
+				gaps.add(gap);
+			}
+			for (long gap = (long) (base[base.length - 1] * 2.25); gap < n; gap = (long) (gap * 2.25))
+				gaps.add((int) gap);
+			return descending(gaps, true);
+		}
+	},
+
+	/*
+	 * Tokuda (1992): ceil((9^k - 4^k) / (5 * 4^(k-1)))
+	 */
+	TOKUDA {
+		@Override
+		public int[] gaps(int n) {
+			ArrayList<Integer> gaps = new ArrayList<>();
+			gaps.add(1);
+			for (double h = 1; ; ) {
+				h = 2.25 * h + 1;
+				int gap = (int) Math.ceil(h);
+				if (gap >= n) break;
+				gaps.add(gap);
+			}
+			return descending(gaps, true);
+		}
+	},
+
+	/*
+	 * Sedgewick (1986): 1, then 4^k + 3 * 2^(k-1) + 1. O(n^(4/3)) worst case
+	 */
+	SEDGEWICK {
+		@Override
+		public int[] gaps(int n) {
+			ArrayList<Integer> gaps = new ArrayList<>();
+			gaps.add(1);
+			for (int k = 1; ; ++k) {
+				long gap = (1L << (2 * k)) + 3L * (1L << (k - 1)) + 1;
+				if (gap >= n) break;
+				gaps.add((int) gap);
+			}
+			return descending(gaps, true);
+		}
+	},
+
+	/*
+	 * Pratt (1971): every 2^p * 3^q below n. O(n log^2 n) but many passes
+	 */
+	PRATT {
+		@Override
+		public int[] gaps(int n) {
+			ArrayList<Integer> gaps = new ArrayList<>();
+			for (long p2 = 1; p2 < n; p2 *= 2) {
+				for (long gap = p2; gap < n; gap *= 3)
+					gaps.add((int) gap);
+			}
+			return descending(gaps, false);
+		}
+	};
+
+	/**
+	 * The default used by Sort.shell; fastest on the weather fields in GapSequenceBenchmark.
+	 */
+	public static final GapSequence DEFAULT = SEDGEWICK;
+
+	public abstract int[] gaps(int n);
+
+	private static int[] descending(ArrayList<Integer> gaps, boolean sorted) {
+		if (!sorted)
+			Collections.sort(gaps);
+
+		int[] result = new int[gaps.size()];
+		for (int i = 0; i < result.length; ++i)
+			result[i] = gaps.get(result.length - 1 - i);
+		return result;
+	}
+}
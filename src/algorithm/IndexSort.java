@@ -0,0 +1,326 @@
+package algorithm;
+
+import java.util.Arrays;
+
+/**
+ * Sorts for primitive columns that return a row permutation.
+ *
+ * The keys are copied next to their row indices and both arrays are moved
+ * together, so comparisons read contiguous primitives instead of dereferencing
+ * objects. All sorts are stable: equal keys keep ascending row order.
+ */
+public class IndexSort {
+	private static final int RUN = 32;
+	private static final int WORD_BITS = 63;	// packed keys stay non-negative
+
+	private IndexSort() {}
+
+	/*
+	 * Identity permutation 0..n-1
+	 */
+	public static int[] identity(int n) {
+		int[] rows = new int[n];
+		for (int i = 0; i < n; ++i) rows[i] = i;
+		return rows;
+	}
+
+	/*
+	 * Stable merge sort over the first n values of a double column.
+	 * Uses Double.compare ordering, the same as Comparator.comparingDouble.
+	 */
+	public static int[] sort(double[] column, int n) {
+		double[] keys = Arrays.copyOf(column, n);
+		int[] rows = identity(n);
+		double[] keyBuf = new double[n];
+		int[] rowBuf = new int[n];
+
+		for (int lo = 0; lo < n; lo += RUN)
+			insertion(keys, rows, lo, Math.min(lo + RUN, n));
+
+		for (int width = RUN; width < n; width *= 2) {
+			for (int lo = 0; lo < n; lo += 2 * width) {
+				int mid = Math.min(lo + width, n);
+				int hi = Math.min(lo + 2 * width, n);
+				merge(keys, rows, keyBuf, rowBuf, lo, mid, hi);
+			}
+
+			// Ping-pong: the buffer now holds the merged pass
+			double[] k = keys; keys = keyBuf; keyBuf = k;
+			int[] r = rows; rows = rowBuf; rowBuf = r;
+		}
+
+		return rows;
+	}
+
+	/*
+	 * Stable merge sort over the first n values of an int column.
+	 */
+	public static int[] sort(int[] column, int n) {
+		int[] keys = Arrays.copyOf(column, n);
+		int[] rows = identity(n);
+		int[] keyBuf = new int[n];
+		int[] rowBuf = new int[n];
+
+		for (int lo = 0; lo < n; lo += RUN)
+			insertion(keys, rows, lo, Math.min(lo + RUN, n));
+
+		for (int width = RUN; width < n; width *= 2) {
+			for (int lo = 0; lo < n; lo += 2 * width) {
+				int mid = Math.min(lo + width, n);
+				int hi = Math.min(lo + 2 * width, n);
+				merge(keys, rows, keyBuf, rowBuf, lo, mid, hi);
+			}
+
+			int[] k = keys; keys = keyBuf; keyBuf = k;
+			int[] r = rows; rows = rowBuf; rowBuf = r;
+		}
+
+		return rows;
+	}
+
+	/*
+	 * Stable counting sort over the first n codes of a column whose values are in
+	 * [0, cardinality). O(n + cardinality), for dictionary-encoded text.
+	 */
+	public static int[] counting(int[] codes, int n, int cardinality) {
+		int[] start = new int[cardinality + 1];
+		for (int i = 0; i < n; ++i)
+			start[codes[i] + 1]++;
+		for (int code = 0; code < cardinality; ++code)
+			start[code + 1] += start[code];
+
+		int[] rows = new int[n];
+		for (int i = 0; i < n; ++i)
+			rows[start[codes[i]]++] = i;
+		return rows;
+	}
+
+	/*
+	 * Dense ranks of the first n values of a double column in Double.compare order:
+	 * equal values share a rank and ranks have no gaps. Returns the number of ranks.
+	 */
+	public static int rank(double[] column, int n, int[] ranks) {
+		long[] keys = new long[n];
+		for (int i = 0; i < n; ++i)
+			keys[i] = Sort.sortableBits(column[i]);
+		return rankInPlace(keys, ranks);
+	}
+
+	/*
+	 * Dense ranks of the first n values of a long column; returns the number of ranks.
+	 */
+	public static int rank(long[] column, int n, int[] ranks) {
+		return rankInPlace(Arrays.copyOf(column, n), ranks);
+	}
+
+	/*
+	 * Stable lexicographic sort by several rank columns, the first the most significant.
+	 * Column k holds values in [0, cardinalities[k]), which take only as many bits as
+	 * that cardinality needs, so consecutive columns are packed into 63-bit words and
+	 * sorted with one LSD radix sort per word, least significant word first. Most
+	 * multi-field orders fit in one or two words.
+	 */
+	public static int[] packed(int[][] ranks, int[] cardinalities, int n) {
+		int columns = ranks.length;
+		int[] widths = widths(cardinalities);
+
+		// Word w covers columns [firsts[w], firsts[w + 1])
+		int[] firsts = new int[columns + 1];
+		int words = 0;
+		for (int k = 0, bits = 0; k < columns; ++k) {
+			if (k == 0 || bits + widths[k] > WORD_BITS) {
+				firsts[words++] = k;
+				bits = 0;
+			}
+			bits += widths[k];
+		}
+		firsts[words] = columns;
+
+		int[] rows = identity(n);
+		long[] keys = new long[n];
+		for (int w = words - 1; w >= 0; --w) {
+			for (int i = 0; i < n; ++i) {
+				int row = rows[i];
+				long key = 0;
+				for (int k = firsts[w]; k < firsts[w + 1]; ++k)
+					key = key << widths[k] | ranks[k][row];
+				keys[i] = key;
+			}
+			Sort.radix(keys, rows);
+		}
+		return rows;
+	}
+
+	/*
+	 * The rank columns packed into one key per row, first column most significant,
+	 * or null when they need more than 63 bits.
+	 */
+	public static long[] pack(int[][] ranks, int[] cardinalities, int n) {
+		int[] widths = widths(cardinalities);
+		int bits = 0;
+		for (int width : widths)
+			bits += width;
+		if (bits > WORD_BITS)
+			return null;
+
+		long[] keys = new long[n];
+		for (int k = 0; k < ranks.length; ++k) {
+			int[] column = ranks[k];
+			for (int i = 0; i < n; ++i)
+				keys[i] = keys[i] << widths[k] | column[i];
+		}
+		return keys;
+	}
+
+	/*
+	 * Rows of the k smallest of the first n keys, ascending, ties in row order: the
+	 * first k rows of a stable sort. A bounded max-heap of rows keeps this O(n log k).
+	 * Flip a key with ~key to take the largest instead.
+	 */
+	public static int[] top(long[] keys, int n, int k) {
+		k = Math.max(0, Math.min(k, n));
+		int[] heap = new int[k];	// max-heap of rows by (key, row)
+		int size = 0;
+
+		for (int row = 0; row < n; ++row) {
+			if (size < k) {
+				int child = size++;
+				while (child > 0) {
+					int parent = (child - 1) >>> 1;
+					if (keys[heap[parent]] > keys[row])	// equal keys: the parent has the lower row
+						break;
+					heap[child] = heap[parent];
+					child = parent;
+				}
+				heap[child] = row;
+			} else if (k > 0 && keys[row] < keys[heap[0]]) {
+				siftDown(keys, heap, size, row);
+			}
+		}
+
+		for (int end = size - 1; end > 0; --end) {
+			int worst = heap[0];
+			siftDown(keys, heap, end, heap[end]);
+			heap[end] = worst;
+		}
+		return heap;
+	}
+
+	/*
+	 * Private helper methods
+	 */
+	private static void siftDown(long[] keys, int[] heap, int size, int row) {
+		int position = 0;
+		while (true) {
+			int child = 2 * position + 1;
+			if (child >= size)
+				break;
+			if (child + 1 < size && after(keys, heap[child + 1], heap[child]))
+				child++;
+			if (!after(keys, heap[child], row))
+				break;
+			heap[position] = heap[child];
+			position = child;
+		}
+		heap[position] = row;
+	}
+
+	private static boolean after(long[] keys, int row, int other) {
+		return keys[row] != keys[other] ? keys[row] > keys[other] : row > other;
+	}
+
+	private static int[] widths(int[] cardinalities) {
+		int[] widths = new int[cardinalities.length];
+		for (int k = 0; k < widths.length; ++k)
+			widths[k] = cardinalities[k] <= 1 ? 0 : 32 - Integer.numberOfLeadingZeros(cardinalities[k] - 1);
+		return widths;
+	}
+
+	private static int rankInPlace(long[] keys, int[] ranks) {
+		int n = keys.length;
+		int[] rows = identity(n);
+		Sort.radix(keys, rows);
+
+		int rank = -1;
+		for (int i = 0; i < n; ++i) {
+			if (i == 0 || keys[i] != keys[i - 1])
+				rank++;
+			ranks[rows[i]] = rank;
+		}
+		return rank + 1;
+	}
+
+	private static void insertion(double[] keys, int[] rows, int lo, int hi) {
+		for (int i = lo + 1; i < hi; ++i) {
+			double key = keys[i];
+			int row = rows[i];
+			int j = i - 1;
+
+			while (j >= lo && Double.compare(keys[j], key) > 0) {
+				keys[j + 1] = keys[j];
+				rows[j + 1] = rows[j];
+				j--;
+			}
+
+			keys[j + 1] = key;
+			rows[j + 1] = row;
+		}
+	}
+
+	private static void insertion(int[] keys, int[] rows, int lo, int hi) {
+		for (int i = lo + 1; i < hi; ++i) {
+			int key = keys[i];
+			int row = rows[i];
+			int j = i - 1;
+
+			while (j >= lo && keys[j] > key) {
+				keys[j + 1] = keys[j];
+				rows[j + 1] = rows[j];
+				j--;
+			}
+
+			keys[j + 1] = key;
+			rows[j + 1] = row;
+		}
+	}
+
+	private static void merge(double[] keys, int[] rows, double[] keyOut, int[] rowOut, int lo, int mid, int hi) {
+		int i = lo, j = mid, k = lo;
+
+		while (i < mid && j < hi) {
+			if (Double.compare(keys[i], keys[j]) <= 0) {
+				keyOut[k] = keys[i];
+				rowOut[k++] = rows[i++];
+			} else {
+				keyOut[k] = keys[j];
+				rowOut[k++] = rows[j++];
+			}
+		}
+
+		System.arraycopy(keys, i, keyOut, k, mid - i);
+		System.arraycopy(rows, i, rowOut, k, mid - i);
+		k += mid - i;
+		System.arraycopy(keys, j, keyOut, k, hi - j);
+		System.arraycopy(rows, j, rowOut, k, hi - j);
+	}
+
+	private static void merge(int[] keys, int[] rows, int[] keyOut, int[] rowOut, int lo, int mid, int hi) {
+		int i = lo, j = mid, k = lo;
+
+		while (i < mid && j < hi) {
+			if (keys[i] <= keys[j]) {
+				keyOut[k] = keys[i];
+				rowOut[k++] = rows[i++];
+			} else {
+				keyOut[k] = keys[j];
+				rowOut[k++] = rows[j++];
+			}
+		}
+
+		System.arraycopy(keys, i, keyOut, k, mid - i);
+		System.arraycopy(rows, i, rowOut, k, mid - i);
+		k += mid - i;
+		System.arraycopy(keys, j, keyOut, k, hi - j);
+		System.arraycopy(rows, j, rowOut, k, hi - j);
+	}
+}
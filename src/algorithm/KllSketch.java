@@ -0,0 +1,224 @@
+package algorithm;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * KLL quantile sketch: approximate quantiles of a stream in bounded memory.
+ *
+ * Values go into a stack of compactors. Level h holds items that each stand
+ * for 2^h values; when the sketch is full, the lowest level at capacity is
+ * sorted and every other item, from a random start, moves up a level. Level
+ * capacities shrink by 2/3 going down from the top, so a sketch holds about
+ * 3k values however long the stream, and the rank error is roughly 1.7 / k
+ * (about 1% for the default k = 200). The minimum and maximum are exact.
+ *
+ * Sketches of separate parts of a stream can be merged.
+ */
+public class KllSketch {
+	public static final int DEFAULT_K = 200;
+	private static final double SHRINK = 2.0 / 3.0;
+	private static final int MIN_CAPACITY = 2;
+
+	private final int k;
+	private final SplittableRandom random;
+	private double[][] levels = new double[1][];
+	private int[] sizes = new int[1];
+	private int retained;
+	private int capacity;
+	private long count;
+	private double min = Double.NaN, max = Double.NaN;
+
+	public KllSketch() {
+		this(DEFAULT_K);
+	}
+
+	public KllSketch(int k) {
+		this(k, new SplittableRandom());
+	}
+
+	/**
+	 * A sketch whose compactions are driven by a fixed seed, for repeatable results.
+	 */
+	public KllSketch(int k, long seed) {
+		this(k, new SplittableRandom(seed));
+	}
+
+	private KllSketch(int k, SplittableRandom random) {
+		if (k < MIN_CAPACITY)
+			throw new IllegalArgumentException("k must be at least " + MIN_CAPACITY + ": " + k);
+		this.k = k;
+		this.random = random;
+		levels[0] = new double[k];
+		capacity = capacity(0);
+	}
+
+	/**
+	 * Adds one value; NaN is ignored.
+	 */
+	public void update(double value) {
+		if (value != value)
+			return;
+
+		if (count++ == 0) {
+			min = max = value;
+		} else {
+			min = Math.min(min, value);
+			max = Math.max(max, value);
+		}
+
+		add(0, value);
+		if (retained >= capacity)
+			compress();
+	}
+
+	/**
+	 * Adds the values summarized by another sketch, which is left unchanged.
+	 */
+	public void merge(KllSketch other) {
+		if (other.count == 0)
+			return;
+
+		while (levels.length < other.levels.length)
+			grow();
+		for (int h = 0; h < other.levels.length; ++h) {
+			for (int i = 0; i < other.sizes[h]; ++i)
+				add(h, other.levels[h][i]);
+		}
+
+		min = count == 0 ? other.min : Math.min(min, other.min);
+		max = count == 0 ? other.max : Math.max(max, other.max);
+		count += other.count;
+		capacity = totalCapacity();
+		while (retained >= capacity)
+			compress();
+	}
+
+	/**
+	 * Number of values added, not counting NaN.
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Number of items the sketch currently holds.
+	 */
+	public int getRetained() {
+		return retained;
+	}
+
+	/**
+	 * Approximate value at probability p in [0, 1]: the smallest retained value
+	 * whose weighted rank reaches p * count. NaN when the sketch is empty.
+	 */
+	public double quantile(double p) {
+		return quantiles(p)[0];
+	}
+
+	public double[] quantiles(double... probabilities) {
+		double[] result = new double[probabilities.length];
+		if (count == 0) {
+			Arrays.fill(result, Double.NaN);
+			return result;
+		}
+
+		// Retained items sorted by value, with the weight 2^h of their level
+		long[] packed = new long[retained];
+		int[] itemLevels = new int[retained];
+		int n = 0;
+		for (int h = 0; h < levels.length; ++h) {
+			for (int i = 0; i < sizes[h]; ++i) {
+				itemLevels[n] = h;
+				packed[n++] = Sort.sortableBits(levels[h][i]);
+			}
+		}
+		int[] rows = IndexSort.identity(n);
+		Sort.radix(packed, rows);
+
+		long[] cumulative = new long[n];
+		long total = 0;
+		for (int i = 0; i < n; ++i) {
+			total += 1L << itemLevels[rows[i]];
+			cumulative[i] = total;
+		}
+
+		for (int q = 0; q < probabilities.length; ++q) {
+			double p = probabilities[q];
+			if (p <= 0) {
+				result[q] = min;
+			} else if (p >= 1) {
+				result[q] = max;
+			} else {
+				long target = (long) Math.ceil(p * total);
+				int i = Arrays.binarySearch(cumulative, target);
+				result[q] = Sort.fromSortableBits(packed[i >= 0 ? i : -i - 1]);
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public String toString() {
+		return "KllSketch(k=" + k + ", " + count + " values, " + retained + " retained, " + levels.length + " levels)";
+	}
+
+	/*
+	 * Private helper methods
+	 */
+	private void add(int h, double value) {
+		if (sizes[h] == levels[h].length)
+			levels[h] = Arrays.copyOf(levels[h], Math.max(MIN_CAPACITY, 2 * sizes[h]));
+		levels[h][sizes[h]++] = value;
+		retained++;
+	}
+
+	/*
+	 * Compacts the lowest level at capacity: sorts it and promotes every other item
+	 */
+	private void compress() {
+		for (int h = 0; h < levels.length; ++h) {
+			if (sizes[h] < capacity(h))
+				continue;
+
+			if (h + 1 == levels.length)
+				grow();
+
+			double[] level = levels[h];
+			int size = sizes[h];
+			Arrays.sort(level, 0, size);
+
+			// An odd item out stays behind so the promoted ones pair up exactly
+			int keep = size & 1;
+			for (int i = keep + random.nextInt(2); i < size; i += 2)
+				add(h + 1, level[i]);
+
+			retained -= size - keep;
+			sizes[h] = keep;
+			break;
+		}
+		capacity = totalCapacity();
+	}
+
+	private void grow() {
+		int height = levels.length;
+		levels = Arrays.copyOf(levels, height + 1);
+		sizes = Arrays.copyOf(sizes, height + 1);
+		levels[height] = new double[MIN_CAPACITY];
+	}
+
+	/*
+	 * Capacity of level h: k at the top, shrinking by SHRINK per level below it
+	 */
+	private int capacity(int h) {
+		int depth = levels.length - h - 1;
+		return Math.max(MIN_CAPACITY, (int) Math.ceil(k * Math.pow(SHRINK, depth)));
+	}
+
+	private int totalCapacity() {
+		int total = 0;
+		for (int h = 0; h < levels.length; ++h)
+			total += capacity(h);
+		return total;
+	}
+}
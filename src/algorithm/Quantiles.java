@@ -0,0 +1,182 @@
+package algorithm;
+
+import java.util.Arrays;
+import java.util.List;
+
+import csv.WeatherColumnStore;
+import csv.WeatherColumns;
+import csv.WeatherRecord;
+import csv.WeatherRecord.WeatherField;
+
+/**
+ * Percentiles and medians of numeric weather fields without a full sort.
+ *
+ * exact() copies the values, drops NaN and finds every rank the requested
+ * probabilities need with one multi-rank quickselect (Sort.select), O(n)
+ * expected for a handful of probabilities. fromSorted() reads them straight
+ * off rows already in ascending order, such as a permutation kept in a
+ * SortedIndexCache, without touching the rest; exact() uses one when the
+ * cache has it. For data too large to hold, KllSketch gives approximate
+ * values in bounded memory.
+ *
+ * Quantiles interpolate linearly between the two nearest ranks (the common
+ * "type 7" definition, as in NumPy and Excel's PERCENTILE): the median of an
+ * even count is the mean of the middle two. NaN values are ignored; with no
+ * values left every quantile is NaN.
+ */
+public class Quantiles {
+	private Quantiles() {}
+
+	/**
+	 * Parses probabilities written as fractions or percentiles, e.g. "0.5,p95,99.9%".
+	 */
+	public static double[] parse(String text) {
+		String[] parts = text.split(",");
+		double[] probabilities = new double[parts.length];
+		for (int i = 0; i < parts.length; ++i) {
+			String part = parts[i].trim().toLowerCase();
+			boolean percent = part.startsWith("p") || part.endsWith("%");
+			if (part.startsWith("p"))
+				part = part.substring(1);
+			if (part.endsWith("%"))
+				part = part.substring(0, part.length() - 1);
+
+			probabilities[i] = Double.parseDouble(part) / (percent ? 100 : 1);
+		}
+		check(probabilities);
+		return probabilities;
+	}
+
+	/**
+	 * Exact quantiles of the first n values; values is not modified.
+	 */
+	public static double[] exact(double[] values, int n, double... probabilities) {
+		check(probabilities);
+
+		double[] copy = new double[n];
+		int count = 0;
+		for (int i = 0; i < n; ++i) {
+			if (values[i] == values[i])
+				copy[count++] = values[i];
+		}
+
+		// Both neighbours of every interpolated position, ascending and distinct
+		int[] ranks = new int[2 * probabilities.length];
+		int used = 0;
+		if (count > 0) {
+			for (double p : probabilities) {
+				double position = p * (count - 1);
+				ranks[used++] = (int) Math.floor(position);
+				ranks[used++] = (int) Math.ceil(position);
+			}
+		}
+		ranks = Arrays.stream(ranks, 0, used).sorted().distinct().toArray();
+
+		Sort.select(copy, 0, count, ranks);
+		return interpolate(copy, 0, count, probabilities);
+	}
+
+	public static double[] exact(WeatherColumns columns, WeatherField field, double... probabilities) {
+		return exact(numericColumn(columns, field), columns.size(), probabilities);
+	}
+
+	/**
+	 * Exact quantiles of a field, read off a cached order of the same rows by
+	 * that field when cache holds one and found by selection otherwise.
+	 */
+	public static double[] exact(WeatherColumns columns, WeatherField field, SortedIndexCache cache, double... probabilities) {
+		SortedIndex index = cache.ascending(field);
+		if (index != null && index.size() == columns.size())
+			return fromSorted(columns, field, index, probabilities);
+		return exact(columns, field, probabilities);
+	}
+
+	public static double[] exact(List<WeatherRecord> records, WeatherField field, double... probabilities) {
+		return exact(values(records, field), records.size(), probabilities);
+	}
+
+	/**
+	 * Quantiles of a field from an order of every row ascending by that field
+	 * (NaN last), such as sortPermutation(columns, field); O(log n).
+	 */
+	public static double[] fromSorted(WeatherColumns columns, WeatherField field, SortedIndex sorted, double... probabilities) {
+		check(probabilities);
+		double[] column = numericColumn(columns, field);
+
+		// NaN rows sort last: find where they start
+		int low = 0, high = sorted.size();
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (column[sorted.row(mid)] != column[sorted.row(mid)])
+				high = mid;
+			else
+				low = mid + 1;
+		}
+
+		double[] result = new double[probabilities.length];
+		for (int q = 0; q < probabilities.length; ++q) {
+			if (low == 0) {
+				result[q] = Double.NaN;
+				continue;
+			}
+			double position = probabilities[q] * (low - 1);
+			double below = column[sorted.row((int) Math.floor(position))];
+			double above = column[sorted.row((int) Math.ceil(position))];
+			result[q] = below + (position - Math.floor(position)) * (above - below);
+		}
+		return result;
+	}
+
+	/**
+	 * Approximate quantiles of a field over any number of records, in the memory
+	 * of one KllSketch of the given k.
+	 */
+	public static double[] approximate(Iterable<WeatherRecord> records, WeatherField field, int k, double... probabilities) {
+		check(probabilities);
+		KllSketch sketch = new KllSketch(k);
+		for (WeatherRecord record : records)
+			sketch.update(record.getDouble(field));
+		return sketch.quantiles(probabilities);
+	}
+
+	/*
+	 * Private helper methods
+	 */
+	private static void check(double[] probabilities) {
+		for (double p : probabilities) {
+			if (!(p >= 0 && p <= 1))
+				throw new IllegalArgumentException("Probability outside [0, 1]: " + p);
+		}
+	}
+
+	private static double[] numericColumn(WeatherColumns columns, WeatherField field) {
+		if (!WeatherColumnStore.isNumeric(field))
+			throw new IllegalArgumentException("Not a numeric field: " + field);
+		return columns.getColumn(field);
+	}
+
+	private static double[] values(List<WeatherRecord> records, WeatherField field) {
+		double[] values = new double[records.size()];
+		for (int i = 0; i < values.length; ++i)
+			values[i] = records.get(i).getDouble(field);
+		return values;
+	}
+
+	/*
+	 * Type 7 quantiles of a[from, from + count), which holds its sorted value at every rank needed
+	 */
+	private static double[] interpolate(double[] a, int from, int count, double[] probabilities) {
+		double[] result = new double[probabilities.length];
+		for (int q = 0; q < probabilities.length; ++q) {
+			if (count == 0) {
+				result[q] = Double.NaN;
+				continue;
+			}
+			double position = probabilities[q] * (count - 1);
+			double below = a[from + (int) Math.floor(position)];
+			double above = a[from + (int) Math.ceil(position)];
+			result[q] = below + (position - Math.floor(position)) * (above - below);
+		}
+		return result;
+	}
+}
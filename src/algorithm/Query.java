@@ -0,0 +1,221 @@
+package algorithm;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import csv.WeatherColumnStore;
+import csv.WeatherRecord.WeatherField;
+
+/**
+ * Row filter: a list of conditions on fields, all of which must hold.
+ *
+ * Each condition compares one field with constant values: =, <, <=, >, >=,
+ * between (both ends included) or starts (a text prefix). Numeric fields
+ * compare as Double.compare does; text fields alphabetically, where null
+ * values match nothing; dates by instant, except for starts, which matches
+ * the formatted text (e.g. starts '2006-04'). Queries are immutable; and()
+ * returns a new one. QueryIndex evaluates them.
+ *
+ * The text form joins conditions with "and", e.g.
+ * "temperature between -5 and 0 and pressure < 1000 and summary starts 'Partly'".
+ * Values holding spaces or operators are quoted with ' or ".
+ */
+public class Query {
+	private final List<Condition> conditions;
+
+	public enum Operator {
+		EQUAL("="), LESS("<"), AT_MOST("<="), GREATER(">"), AT_LEAST(">="), BETWEEN("between"), STARTS("starts");
+
+		private final String symbol;
+
+		Operator(String symbol) {
+			this.symbol = symbol;
+		}
+
+		@Override
+		public String toString() {
+			return symbol;
+		}
+	}
+
+	/**
+	 * One field compared with one value, or two for BETWEEN.
+	 */
+	public static class Condition {
+		private final WeatherField field;
+		private final Operator operator;
+		private final String value;
+		private final String upper;
+
+		Condition(WeatherField field, Operator operator, String value, String upper) {
+			this.field = field;
+			this.operator = operator;
+			this.value = value;
+			this.upper = upper;
+		}
+
+		public WeatherField getField() { return field; }
+		public Operator getOperator() { return operator; }
+		public String getValue() { return value; }
+
+		/**
+		 * Upper end of a BETWEEN, null for other operators.
+		 */
+		public String getUpper() { return upper; }
+
+		@Override
+		public String toString() {
+			return field + " " + operator + " " + quote(value) + (upper != null ? " and " + quote(upper) : "");
+		}
+	}
+
+	private Query(List<Condition> conditions) {
+		this.conditions = Collections.unmodifiableList(conditions);
+	}
+
+	/**
+	 * A query of one condition; throws IllegalArgumentException for BETWEEN, which
+	 * takes two values, and for STARTS on a numeric field.
+	 */
+	public static Query where(WeatherField field, Operator operator, String value) {
+		return new Query(List.of(condition(field, operator, value, null)));
+	}
+
+	public static Query between(WeatherField field, String low, String high) {
+		return new Query(List.of(condition(field, Operator.BETWEEN, low, high)));
+	}
+
+	/**
+	 * This query with one more condition.
+	 */
+	public Query and(WeatherField field, Operator operator, String value) {
+		return and(where(field, operator, value));
+	}
+
+	/**
+	 * Rows matching both queries.
+	 */
+	public Query and(Query other) {
+		List<Condition> next = new ArrayList<>(conditions);
+		next.addAll(other.conditions);
+		return new Query(next);
+	}
+
+	/**
+	 * Parses the text form; throws IllegalArgumentException on a syntax error or unknown field.
+	 */
+	public static Query parse(String text) {
+		List<String> tokens = tokenize(text);
+		List<Condition> conditions = new ArrayList<>();
+		int i = 0;
+
+		while (true) {
+			if (i + 2 >= tokens.size())
+				throw new IllegalArgumentException("Incomplete condition in: " + text);
+
+			WeatherField field = SortSpec.field(tokens.get(i));
+			if (field == null)
+				throw new IllegalArgumentException("Unknown field: " + tokens.get(i));
+			Operator operator = operator(tokens.get(i + 1));
+			String value = unquote(tokens.get(i + 2));
+			i += 3;
+
+			String upper = null;
+			if (operator == Operator.BETWEEN) {
+				if (i + 1 >= tokens.size() || !tokens.get(i).equalsIgnoreCase("and"))
+					throw new IllegalArgumentException("Expected between <low> and <high> in: " + text);
+				upper = unquote(tokens.get(i + 1));
+				i += 2;
+			}
+			conditions.add(condition(field, operator, value, upper));
+
+			if (i == tokens.size())
+				return new Query(conditions);
+			if (!tokens.get(i).equalsIgnoreCase("and"))
+				throw new IllegalArgumentException("Expected \"and\" before: " + tokens.get(i));
+			i++;
+		}
+	}
+
+	public List<Condition> getConditions() {
+		return conditions;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder text = new StringBuilder();
+		for (Condition condition : conditions)
+			text.append(text.length() == 0 ? "" : " and ").append(condition);
+		return text.toString();
+	}
+
+	/*
+	 * Private helper methods
+	 */
+	private static Condition condition(WeatherField field, Operator operator, String value, String upper) {
+		if ((operator == Operator.BETWEEN) != (upper != null))
+			throw new IllegalArgumentException(operator == Operator.BETWEEN ? "between needs two values" : operator + " takes one value");
+		if (operator == Operator.STARTS && WeatherColumnStore.isNumeric(field))
+			throw new IllegalArgumentException("starts needs a text field: " + field);
+		return new Condition(field, operator, value, upper);
+	}
+
+	private static Operator operator(String token) {
+		return switch (token.toLowerCase()) {
+			case "=", "==" -> Operator.EQUAL;
+			case "<" -> Operator.LESS;
+			case "<=" -> Operator.AT_MOST;
+			case ">" -> Operator.GREATER;
+			case ">=" -> Operator.AT_LEAST;
+			case "between" -> Operator.BETWEEN;
+			case "starts" -> Operator.STARTS;
+			default -> throw new IllegalArgumentException("Unknown operator: " + token);
+		};
+	}
+
+	/*
+	 * Splits into words, operators and quoted strings; quoted tokens keep their quotes
+	 */
+	private static List<String> tokenize(String text) {
+		List<String> tokens = new ArrayList<>();
+		int i = 0;
+		while (i < text.length()) {
+			char c = text.charAt(i);
+			int start = i;
+			if (Character.isWhitespace(c)) {
+				i++;
+				continue;
+			}
+
+			if (c == '\'' || c == '"') {
+				int end = text.indexOf(c, i + 1);
+				if (end < 0)
+					throw new IllegalArgumentException("Unterminated quote in: " + text);
+				i = end + 1;
+			} else if (isOperatorChar(c)) {
+				while (i < text.length() && isOperatorChar(text.charAt(i)))
+					i++;
+			} else {
+				while (i < text.length() && !Character.isWhitespace(text.charAt(i)) && !isOperatorChar(text.charAt(i)))
+					i++;
+			}
+			tokens.add(text.substring(start, i));
+		}
+		return tokens;
+	}
+
+	private static boolean isOperatorChar(char c) {
+		return c == '<' || c == '>' || c == '=';
+	}
+
+	private static String unquote(String token) {
+		char first = token.charAt(0);
+		return first == '\'' || first == '"' ? token.substring(1, token.length() - 1) : token;
+	}
+
+	private static String quote(String value) {
+		return value.isEmpty() || value.chars().anyMatch(c -> Character.isWhitespace(c) || isOperatorChar((char) c))
+			? "'" + value + "'" : value;
+	}
+}
@@ -0,0 +1,385 @@
+package algorithm;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.IntFunction;
+
+import csv.Timestamps;
+import csv.WeatherColumnStore;
+import csv.WeatherColumns;
+import csv.WeatherRecord.WeatherField;
+
+/**
+ * Answers Query conditions on columnar data with binary search over sorted
+ * row permutations instead of scanning every row.
+ *
+ * Each condition becomes an interval of keys: sortable bits for numbers
+ * (see Sort.sortableBits), dictionary codes for text, epoch milliseconds for
+ * dates, and for a prefix of the date text the rank of each row's date among
+ * the distinct date strings. Two binary searches over the field's sorted index give the slice of
+ * rows inside it in O(log n). Conditions are then intersected from the
+ * smallest slice up: while the match is much smaller than the next slice its
+ * rows are checked one by one, otherwise the slice is turned into a bitmap
+ * and and-ed in. Rows with NaN, null text or an unparsable date never match.
+ *
+ * Sorted indexes are built on first use and kept in a SortedIndexCache, which
+ * can be shared with other users of the same rows. Date values in a query are
+ * full timestamps as in the file, or yyyy-MM-dd for midnight UTC.
+ */
+public class QueryIndex {
+	// Algorithm labels of the indexes in the cache
+	private static final String BY_VALUE = "query";
+	private static final String BY_TEXT = "query text";
+	// Check rows one by one while there are fewer than this fraction of the next slice
+	private static final int PROBE_RATIO = 8;
+
+	private final WeatherColumns columns;
+	private final SortedIndexCache cache;
+	private final WeatherRecordSorter recordSorter = new WeatherRecordSorter();
+	private DateText dateText;
+
+	public QueryIndex(WeatherColumns columns) {
+		this(columns, new SortedIndexCache());
+	}
+
+	/**
+	 * Evaluates queries on columns, keeping its sorted indexes in cache, whose
+	 * permutations must be of the same rows.
+	 */
+	public QueryIndex(WeatherColumns columns, SortedIndexCache cache) {
+		this.columns = columns;
+		this.cache = cache;
+	}
+
+	public WeatherColumns getColumns() {
+		return columns;
+	}
+
+	/**
+	 * Rows matching every condition of query, as a bitmap of row numbers.
+	 * Throws IllegalArgumentException on a value that does not parse for its field.
+	 */
+	public BitSet select(Query query) {
+		List<Slice> slices = new ArrayList<>();
+		for (Query.Condition condition : query.getConditions())
+			slices.add(slice(condition));
+		slices.sort(Comparator.comparingInt(Slice::length));
+
+		BitSet rows = new BitSet(columns.size());
+		if (slices.isEmpty()) {
+			rows.set(0, columns.size());
+			return rows;
+		}
+
+		Slice smallest = slices.get(0);
+		for (int i = smallest.from; i < smallest.to; ++i)
+			rows.set(smallest.index.row(i));
+		int matched = smallest.length();
+
+		for (int s = 1; s < slices.size() && matched > 0; ++s) {
+			Slice slice = slices.get(s);
+			if ((long) matched * PROBE_RATIO < slice.length()) {
+				for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+					if (!slice.contains(row)) {
+						rows.clear(row);
+						matched--;
+					}
+				}
+			} else {
+				BitSet other = new BitSet(columns.size());
+				for (int i = slice.from; i < slice.to; ++i)
+					other.set(slice.index.row(i));
+				rows.and(other);
+				matched = rows.cardinality();
+			}
+		}
+		return rows;
+	}
+
+	/**
+	 * Row numbers matching query, ascending.
+	 */
+	public int[] rows(Query query) {
+		return select(query).stream().toArray();
+	}
+
+	/**
+	 * Number of rows matching one condition, in O(log n) once its index exists.
+	 */
+	public int count(Query.Condition condition) {
+		return slice(condition).length();
+	}
+
+	/*
+	 * Positions [from, to) of a field's sorted index whose keys are in [low, high)
+	 */
+	private static class Slice {
+		final SortedIndex index;
+		final double[] numbers;
+		final int[] codes;
+		final long[] millis;
+		final long low, high;
+		final int from, to;
+
+		Slice(SortedIndex index, double[] numbers, int[] codes, long[] millis, long low, long high) {
+			this.index = index;
+			this.numbers = numbers;
+			this.codes = codes;
+			this.millis = millis;
+			this.low = low;
+			this.high = high;
+			from = search(low);
+			to = Math.max(from, search(high));
+		}
+
+		int length() {
+			return to - from;
+		}
+
+		long key(int row) {
+			if (numbers != null)
+				return Sort.sortableBits(numbers[row]);
+			return codes != null ? codes[row] : millis[row];
+		}
+
+		boolean contains(int row) {
+			long key = key(row);
+			return key >= low && key < high;
+		}
+
+		/*
+		 * First position whose key is at least bound
+		 */
+		private int search(long bound) {
+			int lo = 0, hi = index.size();
+			while (lo < hi) {
+				int mid = (lo + hi) >>> 1;
+				if (key(index.row(mid)) < bound)
+					lo = mid + 1;
+				else
+					hi = mid;
+			}
+			return lo;
+		}
+	}
+
+	/*
+	 * FORMATTED_DATE in text order, which dates are not dictionary-encoded in:
+	 * the index it was ranked from, each row's rank and the distinct strings by rank
+	 */
+	private static class DateText {
+		final SortedIndex index;
+		final int[] ranks;
+		final String[] values;
+
+		DateText(SortedIndex index, int[] ranks, String[] values) {
+			this.index = index;
+			this.ranks = ranks;
+			this.values = values;
+		}
+	}
+
+	/*
+	 * Private helper methods
+	 */
+	private Slice slice(Query.Condition condition) {
+		WeatherField field = condition.getField();
+		if (WeatherColumnStore.isNumeric(field))
+			return numberSlice(condition);
+		if (field == WeatherField.FORMATTED_DATE && condition.getOperator() != Query.Operator.STARTS)
+			return dateSlice(condition);
+		return textSlice(condition);
+	}
+
+	private Slice numberSlice(Query.Condition condition) {
+		double value = number(condition.getValue());
+		long low = Sort.sortableBits(Double.NEGATIVE_INFINITY);
+		long high = Sort.sortableBits(Double.POSITIVE_INFINITY) + 1;	// NaN stays out
+
+		// -0.0 and 0.0 are distinct keys but equal values
+		switch (condition.getOperator()) {
+			case EQUAL -> { low = atLeast(value); high = atMost(value); }
+			case LESS -> high = atLeast(value);
+			case AT_MOST -> high = atMost(value);
+			case GREATER -> low = atMost(value);
+			case AT_LEAST -> low = atLeast(value);
+			case BETWEEN -> { low = atLeast(value); high = atMost(number(condition.getUpper())); }
+			default -> throw new IllegalArgumentException("Unsupported on numbers: " + condition);
+		}
+
+		WeatherField field = condition.getField();
+		return new Slice(index(field, BY_VALUE), columns.getColumn(field), null, null, low, high);
+	}
+
+	private Slice dateSlice(Query.Condition condition) {
+		long value = instant(condition.getValue());
+		long low = Timestamps.INVALID + 1;
+		long high = Long.MAX_VALUE;
+
+		switch (condition.getOperator()) {
+			case EQUAL -> { low = value; high = value + 1; }
+			case LESS -> high = value;
+			case AT_MOST -> high = value + 1;
+			case GREATER -> low = value + 1;
+			case AT_LEAST -> low = value;
+			case BETWEEN -> { low = value; high = instant(condition.getUpper()) + 1; }
+			default -> throw new IllegalArgumentException("Unsupported on dates: " + condition);
+		}
+
+		return new Slice(index(WeatherField.FORMATTED_DATE, BY_VALUE), null, null, columns.getEpochMillis(), low, high);
+	}
+
+	private Slice textSlice(Query.Condition condition) {
+		WeatherField field = condition.getField();
+		String value = condition.getValue();
+		SortedIndex index;
+		int[] codes;
+		IntFunction<String> decode;
+		int cardinality;
+		if (field == WeatherField.FORMATTED_DATE) {
+			DateText dates = dateText();
+			index = dates.index;
+			codes = dates.ranks;
+			decode = rank -> dates.values[rank];
+			cardinality = dates.values.length;
+		} else {
+			index = index(field, BY_VALUE);
+			codes = columns.getCodes(field);
+			decode = code -> columns.decode(field, code);
+			cardinality = columns.getCardinality(field);
+		}
+		// Null sorts last, after every value
+		int nonNull = cardinality > 0 && decode.apply(cardinality - 1) == null ? cardinality - 1 : cardinality;
+		long low = 0;
+		long high = nonNull;
+
+		switch (condition.getOperator()) {
+			case EQUAL -> { low = firstCode(decode, nonNull, value, false); high = firstCode(decode, nonNull, value, true); }
+			case LESS -> high = firstCode(decode, nonNull, value, false);
+			case AT_MOST -> high = firstCode(decode, nonNull, value, true);
+			case GREATER -> low = firstCode(decode, nonNull, value, true);
+			case AT_LEAST -> low = firstCode(decode, nonNull, value, false);
+			case BETWEEN -> { low = firstCode(decode, nonNull, value, false); high = firstCode(decode, nonNull, condition.getUpper(), true); }
+			case STARTS -> { low = firstCode(decode, nonNull, value, false); high = firstPast(decode, nonNull, value); }
+		}
+
+		return new Slice(index, null, codes, null, low, high);
+	}
+
+	/*
+	 * The date text ranked from its text index; kept until that index is rebuilt
+	 */
+	private DateText dateText() {
+		SortedIndex index = index(WeatherField.FORMATTED_DATE, BY_TEXT);
+		if (dateText != null && dateText.index == index)
+			return dateText;
+
+		int[] ranks = new int[columns.size()];
+		List<String> values = new ArrayList<>();
+		for (int i = 0; i < index.size(); ++i) {
+			int row = index.row(i);
+			String date = columns.getString(WeatherField.FORMATTED_DATE, row);
+			if (values.isEmpty() || WeatherColumns.TEXT_ORDER.compare(values.get(values.size() - 1), date) != 0)
+				values.add(date);
+			ranks[row] = values.size() - 1;
+		}
+		dateText = new DateText(index, ranks, values.toArray(new String[0]));
+		return dateText;
+	}
+
+	/*
+	 * Sorted index of a field, from the cache or built and cached now
+	 */
+	private SortedIndex index(WeatherField field, String label) {
+		SortSpec spec = SortSpec.of(field, false);
+		SortedIndex index = cache.get(spec, label);
+		if (index != null && index.size() == columns.size())
+			return index;
+
+		int[] rows = label.equals(BY_TEXT) ? textOrder(field) : recordSorter.sortPermutation(columns, field, "radix");
+		return cache.put(spec, label, rows);
+	}
+
+	/*
+	 * Rows in the text order of a field that is not dictionary-encoded; ties keep row order
+	 */
+	private int[] textOrder(WeatherField field) {
+		Integer[] rows = new Integer[columns.size()];
+		for (int row = 0; row < rows.length; ++row)
+			rows[row] = row;
+		Arrays.sort(rows, Comparator.comparing(row -> columns.getString(field, row), WeatherColumns.TEXT_ORDER));
+
+		int[] order = new int[rows.length];
+		for (int i = 0; i < order.length; ++i)
+			order[i] = rows[i];
+		return order;
+	}
+
+	/*
+	 * First code below nonNull whose value is at least value, or past it when after is set
+	 */
+	private static int firstCode(IntFunction<String> decode, int nonNull, String value, boolean after) {
+		int lo = 0, hi = nonNull;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			int order = decode.apply(mid).compareTo(value);
+			if (order < 0 || after && order == 0)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+
+	/*
+	 * First code below nonNull whose value is past every value starting with prefix
+	 */
+	private static int firstPast(IntFunction<String> decode, int nonNull, String prefix) {
+		int lo = 0, hi = nonNull;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			String text = decode.apply(mid);
+			if (text.compareTo(prefix) < 0 || text.startsWith(prefix))
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+
+	private static long atLeast(double value) {
+		return Sort.sortableBits(value == 0 ? -0.0 : value);
+	}
+
+	private static long atMost(double value) {
+		return Sort.sortableBits(value == 0 ? 0.0 : value) + 1;
+	}
+
+	private static double number(String text) {
+		try {
+			double value = Double.parseDouble(text);
+			if (value != value)
+				throw new IllegalArgumentException("NaN matches no row");
+			return value;
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Not a number: " + text);
+		}
+	}
+
+	private static long instant(String text) {
+		long millis = Timestamps.parseEpochMillis(text);
+		if (millis != Timestamps.INVALID)
+			return millis;
+		try {
+			return LocalDate.parse(text).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+		} catch (DateTimeParseException e) {
+			throw new IllegalArgumentException("Not a date: " + text);
+		}
+	}
+}
@@ -1,21 +1,238 @@
 package algorithm;
 
+import java.util.Arrays;
 import java.util.Comparator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
 
 public class Sort<T> {
+	private static final int RADIX_WIDE_THRESHOLD = 1 << 16;
+	private static final int INSERTION_THRESHOLD = 24;
+	private static final int MIN_MERGE = 32;
+	private static final int MIN_GALLOP = 7;
+
+	/*
+	 * Ranges at or below this size are sorted sequentially by the parallel variants
+	 */
+	public static final int DEFAULT_PARALLEL_CUTOFF = 1 << 13;
+
+	/*
+	 * Optional counters; null (the default) keeps every sort uninstrumented
+	 */
+	private SortStats stats;
+
+	public void setStats(SortStats stats) {
+		this.stats = stats;
+	}
+
+	SortStats getStats() {
+		return stats;
+	}
+
 	/*
-	 * Quick Sort with Hoare's Partition Scheme
+	 * Quick Sort, introsort style:
+	 * dual-pivot partitioning with pivots taken from five sorted samples,
+	 * insertion sort for small ranges, a loop instead of a call on the largest
+	 * part, and heap sort once the depth passes 2*log2(n), so it stays O(n log n).
 	 */
 	public void quick(T[] a, int low, int high, Comparator<T> comparator) {
-		if (low < high) {
-			int pivotIdx = partition(a, low, high, comparator);
+		if (low < high)
+			introSort(a, low, high, 0, 2 * (31 - Integer.numberOfLeadingZeros(high - low + 1)), comparator);
+	}
+
+	private void introSort(T[] a, int low, int high, int depth, int depthLimit, Comparator<T> comparator) {
+		while (high - low + 1 > INSERTION_THRESHOLD) {
+			if (stats != null)
+				stats.recordDepth(++depth);
+
+			if (depthLimit-- == 0) {
+				heap(a, low, high, comparator);
+				return;
+			}
+
+			// Five evenly spaced samples around the middle, sorted in place
+			int len = high - low + 1;
+			int seventh = (len >> 3) + (len >> 6) + 1;
+			int e3 = (low + high) >>> 1;
+			int e2 = e3 - seventh, e1 = e2 - seventh;
+			int e4 = e3 + seventh, e5 = e4 + seventh;
+			sortSamples(a, comparator, e1, e2, e3, e4, e5);
+
+			if (comparator.compare(a[e2], a[e4]) == 0) {
+				// Pivot value is frequent: three-way split around it, equal keys are done
+				T pivot = a[e3];
+				int lt = low, gt = high, k = low;
+
+				while (k <= gt) {
+					int cmp = comparator.compare(a[k], pivot);
+					if (cmp < 0)
+						swap(a, lt++, k++);
+					else if (cmp > 0)
+						swap(a, k, gt--);
+					else
+						k++;
+				}
+
+				// Recurse on the smaller side, loop on the larger one
+				if (lt - low < high - gt) {
+					introSort(a, low, lt - 1, depth, depthLimit, comparator);
+					low = gt + 1;
+				} else {
+					introSort(a, gt + 1, high, depth, depthLimit, comparator);
+					high = lt - 1;
+				}
+				continue;
+			}
+
+			// Dual-pivot partition: [low, less) < p1 <= [less, great] <= p2 < (great, high]
+			T p1 = a[e2];
+			T p2 = a[e4];
+			a[e2] = a[low];
+			a[e4] = a[high];
+
+			int less = low + 1;
+			int great = high - 1;
+			long moved = 6;
+			while (comparator.compare(a[less], p1) < 0) less++;
+			while (comparator.compare(a[great], p2) > 0) great--;
+
+			outer:
+			for (int k = less; k <= great; ++k) {
+				T ak = a[k];
+				if (comparator.compare(ak, p1) < 0) {
+					a[k] = a[less];
+					a[less++] = ak;
+					if (stats != null)
+						moved += 2;
+				} else if (comparator.compare(ak, p2) > 0) {
+					while (comparator.compare(a[great], p2) > 0) {
+						if (great-- == k)
+							break outer;
+					}
+					if (comparator.compare(a[great], p1) < 0) {
+						a[k] = a[less];
+						a[less++] = a[great];
+					} else {
+						a[k] = a[great];
+					}
+					a[great--] = ak;
+					if (stats != null)
+						moved += 3;
+				}
+			}
+
+			// Move the pivots into their final slots
+			a[low] = a[less - 1];
+			a[less - 1] = p1;
+			a[high] = a[great + 1];
+			a[great + 1] = p2;
+			if (stats != null)
+				stats.addMoves(moved);
+
+			// Three parts: recurse on the two smaller ones, loop on the largest
+			int leftLen = less - 1 - low;
+			int centerLen = great - less + 1;
+			int rightLen = high - great - 1;
+
+			if (leftLen >= centerLen && leftLen >= rightLen) {
+				introSort(a, less, great, depth, depthLimit, comparator);
+				introSort(a, great + 2, high, depth, depthLimit, comparator);
+				high = less - 2;
+			} else if (rightLen >= centerLen) {
+				introSort(a, low, less - 2, depth, depthLimit, comparator);
+				introSort(a, less, great, depth, depthLimit, comparator);
+				low = great + 2;
+			} else {
+				introSort(a, low, less - 2, depth, depthLimit, comparator);
+				introSort(a, great + 2, high, depth, depthLimit, comparator);
+				low = less;
+				high = great;
+			}
+		}
+
+		insertion(a, low, high, comparator);
+	}
+
+	/*
+	 * Sorts five samples in place with a 9-comparator sorting network
+	 */
+	private void sortSamples(T[] a, Comparator<T> comparator, int e1, int e2, int e3, int e4, int e5) {
+		sort2(a, e1, e2, comparator); sort2(a, e4, e5, comparator); sort2(a, e3, e5, comparator);
+		sort2(a, e3, e4, comparator); sort2(a, e1, e4, comparator); sort2(a, e1, e3, comparator);
+		sort2(a, e2, e5, comparator); sort2(a, e2, e4, comparator); sort2(a, e2, e3, comparator);
+	}
+
+	private void sort2(T[] a, int i, int j, Comparator<T> comparator) {
+		if (comparator.compare(a[j], a[i]) < 0)
+			swap(a, i, j);
+	}
 
-			// Recurse on the two partitions
-			quick(a, low, pivotIdx, comparator);
-			quick(a, pivotIdx + 1, high, comparator);
+	/*
+	 * Insertion sort on a[low..high], used for small ranges
+	 */
+	private void insertion(T[] a, int low, int high, Comparator<T> comparator) {
+		long moved = 0;
+
+		for (int i = low + 1; i <= high; ++i) {
+			T temp = a[i];
+			int j = i - 1;
+
+			while (j >= low && comparator.compare(a[j], temp) > 0) {
+				a[j + 1] = a[j];
+				j--;
+			}
+
+			a[j + 1] = temp;
+			if (stats != null && j + 1 < i)
+				moved += i - j;
+		}
+
+		if (stats != null)
+			stats.addMoves(moved);
+	}
+
+	/*
+	 * Heap sort on a[low..high], the introsort fallback
+	 */
+	private void heap(T[] a, int low, int high, Comparator<T> comparator) {
+		int n = high - low + 1;
+
+		for (int i = n / 2 - 1; i >= 0; --i)
+			siftDown(a, low, i, n, comparator);
+
+		for (int end = n - 1; end > 0; --end) {
+			swap(a, low, low + end);
+			siftDown(a, low, 0, end, comparator);
 		}
 	}
 
+	private void siftDown(T[] a, int offset, int i, int n, Comparator<T> comparator) {
+		T temp = a[offset + i];
+		long moved = 1;
+
+		while (2 * i + 1 < n) {
+			int child = 2 * i + 1;
+			if (child + 1 < n && comparator.compare(a[offset + child + 1], a[offset + child]) > 0)
+				child++;
+			if (comparator.compare(a[offset + child], temp) <= 0)
+				break;
+
+			a[offset + i] = a[offset + child];
+			i = child;
+			if (stats != null)
+				moved++;
+		}
+
+		a[offset + i] = temp;
+		if (stats != null)
+			stats.addMoves(moved);
+	}
+
+	/*
+	 * Hoare's partition scheme with a[low] as the pivot
+	 */
 	private int partition(T[] a, int low, int high, Comparator<T> comparator) {
 		T pivot = a[low];
 		int i = low - 1;
@@ -42,47 +259,623 @@ public class Sort<T> {
 
 
 	/*
-	 * Merge sort with Comparator
+	 * Merge sort with Comparator, TimSort style.
+	 * Natural ascending and strictly descending runs are detected (descending ones
+	 * reversed) and short runs are extended with binary insertion sort. Runs are
+	 * then merged pairwise, ping-ponging between the array and one scratch buffer
+	 * allocated up front, with galloping when one side keeps winning. Stable.
 	 */
 	public void merge(T[] a, int l, int r, Comparator<T> comparator) {
-		if (l < r) {
-			int c = (l + r) / 2;
-			merge(a, l, c, comparator);
-			merge(a, c + 1, r, comparator);
-			mergeHelper(a, l, c, r, comparator);
+		if (l < r)
+			mergeSort(a, l, r, Arrays.copyOfRange(a, l, r + 1), 0, comparator);
+	}
+
+	/*
+	 * Sorts a[l..r] using buffer[base, base + r - l] as scratch space
+	 */
+	private void mergeSort(T[] a, int l, int r, T[] buffer, int base, Comparator<T> comparator) {
+		int n = r - l + 1;
+		int minRun = minRunLength(n);
+
+		// Run boundaries relative to l: run i is [bounds[i], bounds[i + 1])
+		int[] bounds = new int[n / minRun + 2];
+		int runCount = 0;
+
+		for (int lo = 0; lo < n; ) {
+			int runLen = countRunAndMakeAscending(a, l + lo, l + n, comparator);
+
+			if (runLen < minRun) {
+				int force = Math.min(minRun, n - lo);
+				binaryInsertion(a, l + lo, l + lo + force, l + lo + runLen, comparator);
+				runLen = force;
+			}
+
+			bounds[runCount++] = lo;
+			lo += runLen;
+		}
+		bounds[runCount] = n;
+
+		T[] src = a, dst = buffer;
+		int srcBase = l, dstBase = base;
+
+		int passes = 0;
+
+		while (runCount > 1) {
+			int merged = 0;
+			int i = 0;
+
+			for (; i + 1 < runCount; i += 2) {
+				mergeRuns(src, srcBase, dst, dstBase, bounds[i], bounds[i + 1], bounds[i + 2], comparator);
+				bounds[merged++] = bounds[i];
+			}
+
+			// Odd run out: carry it over to the other side unchanged
+			if (i < runCount) {
+				System.arraycopy(src, srcBase + bounds[i], dst, dstBase + bounds[i], n - bounds[i]);
+				bounds[merged++] = bounds[i];
+			}
+
+			bounds[merged] = n;
+			runCount = merged;
+
+			T[] t = src; src = dst; dst = t;
+			int b = srcBase; srcBase = dstBase; dstBase = b;
+			passes++;
+		}
+
+		if (src != a)
+			System.arraycopy(src, srcBase, a, l, n);
+
+		if (stats != null) {
+			stats.recordDepth(passes);
+			stats.addMoves((long) passes * n + (src != a ? n : 0));
+		}
+	}
+
+	/*
+	 * Stable merge of the sorted runs [lo, mid) and [mid, hi) of src into dst.
+	 * Indices are relative to srcBase and dstBase respectively.
+	 */
+	private void mergeRuns(T[] src, int srcBase, T[] dst, int dstBase, int lo, int mid, int hi, Comparator<T> comparator) {
+		// Runs already in order: plain copy
+		if (comparator.compare(src[srcBase + mid - 1], src[srcBase + mid]) <= 0) {
+			System.arraycopy(src, srcBase + lo, dst, dstBase + lo, hi - lo);
+			return;
+		}
+
+		int i = lo, j = mid, k = lo;
+		int leftWins = 0, rightWins = 0;
+
+		while (i < mid && j < hi) {
+			if (comparator.compare(src[srcBase + j], src[srcBase + i]) < 0) {
+				dst[dstBase + k++] = src[srcBase + j++];
+				rightWins++;
+				leftWins = 0;
+			} else {
+				dst[dstBase + k++] = src[srcBase + i++];
+				leftWins++;
+				rightWins = 0;
+			}
+
+			if (i == mid || j == hi)
+				break;
+
+			// One side keeps winning: find the whole block it wins and copy it at once
+			if (leftWins >= MIN_GALLOP) {
+				int end = gallopRight(src[srcBase + j], src, srcBase, i, mid, comparator);
+				System.arraycopy(src, srcBase + i, dst, dstBase + k, end - i);
+				k += end - i;
+				i = end;
+				leftWins = 0;
+			} else if (rightWins >= MIN_GALLOP) {
+				int end = gallopLeft(src[srcBase + i], src, srcBase, j, hi, comparator);
+				System.arraycopy(src, srcBase + j, dst, dstBase + k, end - j);
+				k += end - j;
+				j = end;
+				rightWins = 0;
+			}
+		}
+
+		System.arraycopy(src, srcBase + i, dst, dstBase + k, mid - i);
+		System.arraycopy(src, srcBase + j, dst, dstBase + k + mid - i, hi - j);
+	}
+
+	/*
+	 * First index in [from, to) whose element is greater than key
+	 */
+	private int gallopRight(T key, T[] a, int base, int from, int to, Comparator<T> comparator) {
+		int lo = from, hi = from, step = 1;
+
+		while (hi < to && comparator.compare(a[base + hi], key) <= 0) {
+			lo = hi + 1;
+			hi += step;
+			step <<= 1;
+		}
+		hi = Math.min(hi, to);
+
+		while (lo < hi) {
+			int m = (lo + hi) >>> 1;
+			if (comparator.compare(a[base + m], key) <= 0)
+				lo = m + 1;
+			else
+				hi = m;
+		}
+		return lo;
+	}
+
+	/*
+	 * First index in [from, to) whose element is greater than or equal to key
+	 */
+	private int gallopLeft(T key, T[] a, int base, int from, int to, Comparator<T> comparator) {
+		int lo = from, hi = from, step = 1;
+
+		while (hi < to && comparator.compare(a[base + hi], key) < 0) {
+			lo = hi + 1;
+			hi += step;
+			step <<= 1;
+		}
+		hi = Math.min(hi, to);
+
+		while (lo < hi) {
+			int m = (lo + hi) >>> 1;
+			if (comparator.compare(a[base + m], key) < 0)
+				lo = m + 1;
+			else
+				hi = m;
+		}
+		return lo;
+	}
+
+	/*
+	 * Length of the run starting at lo; a strictly descending run is reversed in place
+	 */
+	private int countRunAndMakeAscending(T[] a, int lo, int hi, Comparator<T> comparator) {
+		int runHi = lo + 1;
+		if (runHi == hi)
+			return 1;
+
+		if (comparator.compare(a[runHi++], a[lo]) < 0) {
+			while (runHi < hi && comparator.compare(a[runHi], a[runHi - 1]) < 0)
+				runHi++;
+
+			for (int i = lo, j = runHi - 1; i < j; ++i, --j)
+				swap(a, i, j);
+		} else {
+			while (runHi < hi && comparator.compare(a[runHi], a[runHi - 1]) >= 0)
+				runHi++;
+		}
+
+		return runHi - lo;
+	}
+
+	/*
+	 * Binary insertion sort of a[lo, hi) where a[lo, start) is already sorted
+	 */
+	private void binaryInsertion(T[] a, int lo, int hi, int start, Comparator<T> comparator) {
+		long moved = 0;
+
+		for (int i = start; i < hi; ++i) {
+			T pivot = a[i];
+			int left = lo, right = i;
+
+			// Insert after any equal elements to keep the sort stable
+			while (left < right) {
+				int m = (left + right) >>> 1;
+				if (comparator.compare(pivot, a[m]) < 0)
+					right = m;
+				else
+					left = m + 1;
+			}
+
+			System.arraycopy(a, left, a, left + 1, i - left);
+			a[left] = pivot;
+			if (stats != null)
+				moved += i - left + 1;
+		}
+
+		if (stats != null)
+			stats.addMoves(moved);
+	}
+
+	/*
+	 * TimSort's minimum run length: n / 2^k rounded up, within [MIN_MERGE / 2, MIN_MERGE]
+	 */
+	private static int minRunLength(int n) {
+		int r = 0;
+		while (n >= MIN_MERGE) {
+			r |= (n & 1);
+			n >>= 1;
+		}
+		return n + r;
+	}
+
+	/*
+	 * Merges the sorted batch into a[0, n), which is sorted and has room for it after n.
+	 * Works from the back: the insertion point of each batch element is found by galloping
+	 * then binary search, and the elements above it move with one arraycopy, so only
+	 * elements greater than the smallest of the batch move. Stable, with a's elements
+	 * first among equals. Returns the final index of every batch element, ascending.
+	 */
+	public int[] mergeInto(T[] a, int n, T[] batch, Comparator<T> comparator) {
+		int[] positions = new int[batch.length];
+		int i = n - 1, w = n + batch.length - 1;
+
+		for (int j = batch.length - 1; j >= 0; --j) {
+			T key = batch[j];
+
+			// a[hi..i] > key; gallop back until a[probe] <= key, then search between
+			int hi = i + 1, probe = i, step = 1;
+			while (probe >= 0 && comparator.compare(a[probe], key) > 0) {
+				hi = probe;
+				probe -= step;
+				step <<= 1;
+			}
+			int lo = Math.max(probe + 1, 0);
+			while (lo < hi) {
+				int mid = (lo + hi) >>> 1;
+				if (comparator.compare(a[mid], key) > 0)
+					hi = mid;
+				else
+					lo = mid + 1;
+			}
+
+			int count = i + 1 - lo;
+			System.arraycopy(a, lo, a, w - count + 1, count);
+			w -= count;
+			i = lo - 1;
+
+			a[w] = key;
+			positions[j] = w--;
+		}
+
+		if (stats != null)
+			stats.addMoves(n - 1 - i + batch.length);
+		return positions;
+	}
+
+	/*
+	 * The k smallest elements of a in ascending order, exactly the first k of a stable
+	 * sort: equal elements keep their order in a. A bounded max-heap holds the best k
+	 * seen so far, so this is O(n log k) and a is left untouched.
+	 */
+	public T[] topK(T[] a, int k, Comparator<T> comparator) {
+		return gather(a, topIndices(a, 0, a.length, k, comparator));
+	}
+
+	/*
+	 * Parallel topK: chunks down to the cutoff keep their own heaps, and sibling
+	 * results are merged two at a time keeping the first k.
+	 */
+	public T[] parallelTopK(T[] a, int k, Comparator<T> comparator) {
+		return parallelTopK(a, k, comparator, ForkJoinPool.getCommonPoolParallelism(), DEFAULT_PARALLEL_CUTOFF);
+	}
+
+	public T[] parallelTopK(T[] a, int k, Comparator<T> comparator, int parallelism, int cutoff) {
+		k = Math.max(0, Math.min(k, a.length));
+		TopTask task = new TopTask(a, 0, a.length, k, comparator, Math.max(cutoff, 2));
+		invoke(task, parallelism);
+		return gather(a, task.join());
+	}
+
+	/*
+	 * Partial sort: rearranges a so that a[0, k) holds its k smallest elements in
+	 * ascending order, leaving the rest in no particular order. Quickselect narrows
+	 * to the range holding the k-th element, falling back to sorting that range once
+	 * the depth passes 2*log2(n), then the prefix is quick sorted. O(n + k log k)
+	 * expected. Not stable.
+	 */
+	public void partial(T[] a, int k, Comparator<T> comparator) {
+		k = Math.min(k, a.length);
+		if (k <= 0)
+			return;
+
+		int low = 0, high = a.length - 1;
+		int depthLimit = 2 * (32 - Integer.numberOfLeadingZeros(a.length));
+
+		while (low < high) {
+			if (depthLimit-- == 0) {
+				quick(a, low, high, comparator);
+				break;
+			}
+
+			// Median of three moved to a[low], as in QuickTask
+			int mid = (low + high) >>> 1;
+			if (comparator.compare(a[mid], a[low]) < 0) swap(a, mid, low);
+			if (comparator.compare(a[high], a[low]) < 0) swap(a, high, low);
+			if (comparator.compare(a[high], a[mid]) < 0) swap(a, high, mid);
+			swap(a, low, mid);
+
+			int p = partition(a, low, high, comparator);
+			if (k - 1 <= p)
+				high = p;
+			else
+				low = p + 1;
 		}
+
+		quick(a, 0, k - 1, comparator);
 	}
 
-	private void mergeHelper(T[] a, int l, int c, int r, Comparator<T> comparator) {
-		int n1 = c - l + 1;
-		int n2 = r - c;
+	private class TopTask extends RecursiveTask<int[]> {
+		private static final long serialVersionUID = 1L;
 
-		T[] lA = (T[]) new Object[n1];
-		T[] rA = (T[]) new Object[n2];
+		private final T[] a;
+		private final int from, to, k, cutoff;
+		private final Comparator<T> comparator;
 
-		for (int i = 0; i < n1; ++i) lA[i] = a[l + i];
-		for (int i = 0; i < n2; ++i) rA[i] = a[c + 1 + i];
+		TopTask(T[] a, int from, int to, int k, Comparator<T> comparator, int cutoff) {
+			this.a = a;
+			this.from = from;
+			this.to = to;
+			this.k = k;
+			this.comparator = comparator;
+			this.cutoff = cutoff;
+		}
 
-		int i = 0, j = 0, k = l;
+		@Override
+		protected int[] compute() {
+			if (stats == null)
+				return run();
+
+			stats.sampleAllocation();
+			try {
+				return run();
+			} finally {
+				stats.sampleAllocation();
+			}
+		}
+
+		private int[] run() {
+			if (to - from <= cutoff)
+				return topIndices(a, from, to, k, comparator);
+
+			int mid = (from + to) >>> 1;
+			TopTask left = new TopTask(a, from, mid, k, comparator, cutoff);
+			left.fork();
+			int[] right = new TopTask(a, mid, to, k, comparator, cutoff).compute();
+			return mergeTop(a, left.join(), right, k, comparator);
+		}
+	}
+
+	/*
+	 * Indices of the k smallest elements of a[from, to), ordered by element then index
+	 */
+	private int[] topIndices(T[] a, int from, int to, int k, Comparator<T> comparator) {
+		k = Math.max(0, Math.min(k, to - from));
+		int[] heap = new int[k];	// max-heap: heap[0] is the worst element kept
+		int size = 0;
+
+		for (int i = from; i < to; ++i) {
+			if (size < k) {
+				// Sift up
+				int child = size++;
+				while (child > 0) {
+					int parent = (child - 1) >>> 1;
+					if (!before(a, heap[parent], i, comparator))
+						break;
+					heap[child] = heap[parent];
+					child = parent;
+				}
+				heap[child] = i;
+			} else if (k > 0 && before(a, i, heap[0], comparator)) {
+				siftDown(a, heap, 0, size, i, comparator);
+			}
+		}
+
+		// Heap sort the kept indices into ascending order
+		for (int end = size - 1; end > 0; --end) {
+			int worst = heap[0];
+			siftDown(a, heap, 0, end, heap[end], comparator);
+			heap[end] = worst;
+		}
+		return heap;
+	}
+
+	/*
+	 * Places index at position in the max-heap heap[0, size), moving larger children up
+	 */
+	private void siftDown(T[] a, int[] heap, int position, int size, int index, Comparator<T> comparator) {
+		while (true) {
+			int child = 2 * position + 1;
+			if (child >= size)
+				break;
+			if (child + 1 < size && before(a, heap[child], heap[child + 1], comparator))
+				child++;
+			if (!before(a, index, heap[child], comparator))
+				break;
+			heap[position] = heap[child];
+			position = child;
+		}
+		heap[position] = index;
+	}
 
-		while (i < n1 && j < n2) {
-			if (comparator.compare(lA[i], rA[j]) <= 0)
-				a[k++] = lA[i++];
+	/*
+	 * First k of two index lists sorted by element then index
+	 */
+	private int[] mergeTop(T[] a, int[] left, int[] right, int k, Comparator<T> comparator) {
+		int[] merged = new int[Math.min(k, left.length + right.length)];
+		int i = 0, j = 0;
+		for (int m = 0; m < merged.length; ++m) {
+			if (j == right.length || (i < left.length && before(a, left[i], right[j], comparator)))
+				merged[m] = left[i++];
 			else
-				a[k++] = rA[j++];
+				merged[m] = right[j++];
 		}
+		return merged;
+	}
+
+	/*
+	 * Whether a[i] comes before a[j] in a stable order
+	 */
+	private boolean before(T[] a, int i, int j, Comparator<T> comparator) {
+		int c = comparator.compare(a[i], a[j]);
+		return c != 0 ? c < 0 : i < j;
+	}
 
-		while (i < n1) a[k++] = lA[i++];
-		while (j < n2) a[k++] = rA[j++];
+	private T[] gather(T[] a, int[] indices) {
+		T[] result = Arrays.copyOf(a, indices.length);
+		for (int i = 0; i < indices.length; ++i)
+			result[i] = a[indices[i]];
+		if (stats != null)
+			stats.addMoves(indices.length);
+		return result;
 	}
 
 	/*
-	 * Shell sort with Comparator
+	 * Parallel Quick Sort on a ForkJoinPool.
+	 * Partitions are forked until they shrink to the cutoff, then sorted with quick().
+	 */
+	public void parallelQuick(T[] a, Comparator<T> comparator) {
+		parallelQuick(a, comparator, ForkJoinPool.getCommonPoolParallelism(), DEFAULT_PARALLEL_CUTOFF);
+	}
+
+	public void parallelQuick(T[] a, Comparator<T> comparator, int parallelism, int cutoff) {
+		if (a.length > 1)
+			invoke(new QuickTask(a, 0, a.length - 1, comparator, Math.max(cutoff, 2)), parallelism);
+	}
+
+	private class QuickTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final T[] a;
+		private final int low, high, cutoff;
+		private final Comparator<T> comparator;
+
+		QuickTask(T[] a, int low, int high, Comparator<T> comparator, int cutoff) {
+			this.a = a;
+			this.low = low;
+			this.high = high;
+			this.comparator = comparator;
+			this.cutoff = cutoff;
+		}
+
+		@Override
+		protected void compute() {
+			if (stats == null) {
+				run();
+				return;
+			}
+
+			stats.sampleAllocation();
+			try {
+				run();
+			} finally {
+				stats.sampleAllocation();
+			}
+		}
+
+		private void run() {
+			if (high - low + 1 <= cutoff) {
+				quick(a, low, high, comparator);
+				return;
+			}
+
+			// Median of three moved to a[low] so the Hoare pivot splits evenly on ordered input
+			int mid = (low + high) >>> 1;
+			if (comparator.compare(a[mid], a[low]) < 0) swap(a, mid, low);
+			if (comparator.compare(a[high], a[low]) < 0) swap(a, high, low);
+			if (comparator.compare(a[high], a[mid]) < 0) swap(a, high, mid);
+			swap(a, low, mid);
+
+			int pivotIdx = partition(a, low, high, comparator);
+			invokeAll(new QuickTask(a, low, pivotIdx, comparator, cutoff),
+					  new QuickTask(a, pivotIdx + 1, high, comparator, cutoff));
+		}
+	}
+
+	/*
+	 * Parallel Merge Sort on a ForkJoinPool.
+	 * Halves are sorted concurrently down to the cutoff and merged through one shared buffer.
+	 */
+	public void parallelMerge(T[] a, Comparator<T> comparator) {
+		parallelMerge(a, comparator, ForkJoinPool.getCommonPoolParallelism(), DEFAULT_PARALLEL_CUTOFF);
+	}
+
+	public void parallelMerge(T[] a, Comparator<T> comparator, int parallelism, int cutoff) {
+		if (a.length > 1)
+			invoke(new MergeTask(a, Arrays.copyOf(a, a.length), 0, a.length - 1, comparator, Math.max(cutoff, 2)), parallelism);
+	}
+
+	private class MergeTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final T[] a, buffer;
+		private final int l, r, cutoff;
+		private final Comparator<T> comparator;
+
+		MergeTask(T[] a, T[] buffer, int l, int r, Comparator<T> comparator, int cutoff) {
+			this.a = a;
+			this.buffer = buffer;
+			this.l = l;
+			this.r = r;
+			this.comparator = comparator;
+			this.cutoff = cutoff;
+		}
+
+		@Override
+		protected void compute() {
+			if (stats == null) {
+				run();
+				return;
+			}
+
+			stats.sampleAllocation();
+			try {
+				run();
+			} finally {
+				stats.sampleAllocation();
+			}
+		}
+
+		private void run() {
+			if (r - l + 1 <= cutoff) {
+				mergeSort(a, l, r, buffer, l, comparator);
+				return;
+			}
+
+			int c = (l + r) >>> 1;
+			invokeAll(new MergeTask(a, buffer, l, c, comparator, cutoff),
+					  new MergeTask(a, buffer, c + 1, r, comparator, cutoff));
+
+			// Halves already in order: nothing to merge
+			if (comparator.compare(a[c], a[c + 1]) <= 0)
+				return;
+
+			mergeRuns(a, 0, buffer, 0, l, c + 1, r + 1, comparator);
+			System.arraycopy(buffer, l, a, l, r - l + 1);
+			if (stats != null)
+				stats.addMoves(2L * (r - l + 1));
+		}
+	}
+
+	private static void invoke(ForkJoinTask<?> task, int parallelism) {
+		if (parallelism == ForkJoinPool.getCommonPoolParallelism()) {
+			ForkJoinPool.commonPool().invoke(task);
+			return;
+		}
+
+		ForkJoinPool pool = new ForkJoinPool(Math.max(parallelism, 1));
+		try {
+			pool.invoke(task);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/*
+	 * Shell sort with Comparator, using the default gap sequence (Sedgewick)
 	 */
 	public void shell(T[] a, Comparator<T> comparator) {
+		shell(a, comparator, GapSequence.DEFAULT);
+	}
+
+	/*
+	 * Shell sort with Comparator and an explicit gap sequence
+	 */
+	public void shell(T[] a, Comparator<T> comparator, GapSequence gapSequence) {
 		int n = a.length;
+		long moved = 0;
 
-		for (int gap = n / 2; gap > 0; gap /= 2) {
+		for (int gap : gapSequence.gaps(n)) {
 			for (int i = gap; i < n; ++i) {
 				T temp = a[i];
 				int j;
@@ -91,8 +884,13 @@ public class Sort<T> {
 					a[j] = a[j - gap];
 
 				a[j] = temp;
+				if (stats != null && j < i)
+					moved += (i - j) / gap + 1;
 			}
 		}
+
+		if (stats != null)
+			stats.addMoves(moved);
 	}
 
 	/*
@@ -114,53 +912,187 @@ public class Sort<T> {
 	}
 
 	/*
-	 * Radix sort for int[]
+	 * LSD radix sort for int[], 8 bits per pass.
+	 * The sign bit is flipped so negative values order before positive ones.
 	 */
 	public static void radix(int[] a) {
-		int max = getMax(a);
-		for (int exp = 1; (max / exp) > 0; exp *= 10) {
-			countingSortByDigit(a, exp);
-		}
-	}
-
-	private static void countingSortByDigit(int[] a, int exp) {
 		int n = a.length;
 		int[] output = new int[n];
-		int[] count = new int[10];
+		int[] count = new int[256];
+		int[] src = a, dst = output;
+
+		for (int shift = 0; shift < 32; shift += 8) {
+			Arrays.fill(count, 0);
+			for (int i = 0; i < n; ++i)
+				count[((src[i] ^ Integer.MIN_VALUE) >>> shift) & 0xFF]++;
+
+			if (n == 0 || count[((src[0] ^ Integer.MIN_VALUE) >>> shift) & 0xFF] == n)
+				continue; // Every value shares this digit
+
+			for (int i = 1; i < 256; ++i)
+				count[i] += count[i - 1];
+
+			for (int i = n - 1; i >= 0; --i)
+				dst[--count[((src[i] ^ Integer.MIN_VALUE) >>> shift) & 0xFF]] = src[i];
 
-		for (int i = 0; i < n; ++i) {
-			int digit = (a[i] / exp) % 10;
-			count[digit]++;
+			int[] t = src; src = dst; dst = t;
 		}
 
-		for (int i = 1; i < 10; ++i) {
-			count[i] += count[i - 1];
+		if (src != a)
+			System.arraycopy(src, 0, a, 0, n);
+	}
+
+	/*
+	 * LSD radix sort of double keys that moves a row-index array along with them.
+	 * Keys are mapped to order-preserving IEEE-754 bit patterns, so negative and
+	 * fractional values sort exactly as Double.compare orders them. Stable.
+	 */
+	public static void radix(double[] keys, int[] rows) {
+		long[] bits = new long[keys.length];
+		for (int i = 0; i < keys.length; ++i)
+			bits[i] = sortableBits(keys[i]);
+
+		radix(bits, rows);
+
+		for (int i = 0; i < keys.length; ++i)
+			keys[i] = fromSortableBits(bits[i]);
+	}
+
+	/*
+	 * LSD radix sort of signed long keys carrying row indices.
+	 * Uses 16-bit digits for large inputs and 8-bit digits for small ones, and
+	 * skips passes whose digit is identical across all keys. Stable.
+	 */
+	public static void radix(long[] keys, int[] rows) {
+		int n = keys.length;
+		if (n < 2) return;
+
+		int bits = n >= RADIX_WIDE_THRESHOLD ? 16 : 8;
+		int mask = (1 << bits) - 1;
+		int[] count = new int[1 << bits];
+
+		long[] src = keys, dst = new long[n];
+		int[] rowSrc = rows, rowDst = new int[n];
+
+		for (int shift = 0; shift < 64; shift += bits) {
+			Arrays.fill(count, 0);
+			for (int i = 0; i < n; ++i)
+				count[(int) ((src[i] ^ Long.MIN_VALUE) >>> shift) & mask]++;
+
+			if (count[(int) ((src[0] ^ Long.MIN_VALUE) >>> shift) & mask] == n)
+				continue; // Every key shares this digit
+
+			for (int i = 0, sum = 0; i < count.length; ++i) {
+				int c = count[i];
+				count[i] = sum;
+				sum += c;
+			}
+
+			for (int i = 0; i < n; ++i) {
+				int pos = count[(int) ((src[i] ^ Long.MIN_VALUE) >>> shift) & mask]++;
+				dst[pos] = src[i];
+				rowDst[pos] = rowSrc[i];
+			}
+
+			long[] t = src; src = dst; dst = t;
+			int[] r = rowSrc; rowSrc = rowDst; rowDst = r;
 		}
 
-		for (int i = n - 1; i >= 0; --i) {
-			int digit = (a[i] / exp) % 10;
-			output[count[digit] - 1] = a[i];
-			count[digit]--;
+		if (src != keys) {
+			System.arraycopy(src, 0, keys, 0, n);
+			System.arraycopy(rowSrc, 0, rows, 0, n);
 		}
+	}
+
+	/*
+	 * Quickselect over a[from, to): afterwards a[k] holds the value it would have if
+	 * the range were sorted, with no greater value before it and no smaller one after.
+	 * Same Hoare partitioning as partition(), median of three pivots, and the range is
+	 * sorted outright once the depth passes 2*log2(n). O(n) expected. a must not hold NaN.
+	 */
+	public static void select(double[] a, int from, int to, int k) {
+		select(a, from, to, new int[] { k });
+	}
+
+	/*
+	 * Multi-rank quickselect: afterwards a[k] holds its sorted value for every k of
+	 * ranks, which must be ascending and inside [from, to). Each partition recurses
+	 * only into the sides that still hold a requested rank, so q ranks cost about
+	 * O(n log q) instead of q separate selections. a must not hold NaN.
+	 */
+	public static void select(double[] a, int from, int to, int[] ranks) {
+		if (ranks.length > 0)
+			select(a, from, to - 1, ranks, 0, ranks.length, 2 * (32 - Integer.numberOfLeadingZeros(to - from)));
+	}
 
-		for (int i = 0; i < n; ++i) {
-			a[i] = output[i];
+	private static void select(double[] a, int low, int high, int[] ranks, int rankFrom, int rankTo, int depth) {
+		while (rankFrom < rankTo && low < high) {
+			if (high - low < INSERTION_THRESHOLD || depth-- == 0) {
+				Arrays.sort(a, low, high + 1);
+				return;
+			}
+
+			// Median of three moved to a[low]
+			int mid = (low + high) >>> 1;
+			if (a[mid] < a[low]) swap(a, mid, low);
+			if (a[high] < a[low]) swap(a, high, low);
+			if (a[high] < a[mid]) swap(a, high, mid);
+			swap(a, low, mid);
+
+			double pivot = a[low];
+			int i = low - 1, j = high + 1;
+			while (true) {
+				do i++; while (a[i] < pivot);
+				do j--; while (a[j] > pivot);
+				if (i >= j)
+					break;
+				swap(a, i, j);
+			}
+
+			// Ranks up to j are in [low, j], the rest in [j + 1, high]
+			int split = rankFrom;
+			while (split < rankTo && ranks[split] <= j)
+				split++;
+
+			if (split - rankFrom < rankTo - split) {
+				select(a, low, j, ranks, rankFrom, split, depth);
+				low = j + 1;
+				rankFrom = split;
+			} else {
+				select(a, j + 1, high, ranks, split, rankTo, depth);
+				high = j;
+				rankTo = split;
+			}
 		}
 	}
 
+	private static void swap(double[] a, int i, int j) {
+		double t = a[i];
+		a[i] = a[j];
+		a[j] = t;
+	}
+
+	/*
+	 * Maps a double to a long whose signed order matches Double.compare.
+	 */
+	public static long sortableBits(double d) {
+		long bits = Double.doubleToLongBits(d);
+		return bits ^ ((bits >> 63) & Long.MAX_VALUE);
+	}
+
+	public static double fromSortableBits(long bits) {
+		return Double.longBitsToDouble(bits ^ ((bits >> 63) & Long.MAX_VALUE));
+	}
+
 	/*
 	 * Private helper methods
 	 */
 	private void swap(T[] a, int i, int j) {
+		if (stats != null)
+			stats.addSwap();
+
 		T temp = a[i];
 		a[i] = a[j];
 		a[j] = temp;
 	}
-
-	private static int getMax(int[] a) {
-		int max = a[0];
-		for (int i = 1; i < a.length; ++i)
-			if (a[i] > max) max = a[i];
-		return max;
-	}
 }
@@ -0,0 +1,194 @@
+package algorithm;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import csv.WeatherColumnStore;
+import csv.WeatherColumns;
+import csv.WeatherRecord;
+import csv.WeatherRecord.WeatherField;
+
+/**
+ * Multi-field sort order: a list of fields, each ascending or descending,
+ * the first the most significant.
+ *
+ * A spec gives the equivalent chained comparator for the comparison sorts,
+ * and WeatherRecordSorter can instead sort by it with packed rank keys (see
+ * IndexSort.packed). Specs are immutable; then() returns a new one.
+ *
+ * The text form is a comma-separated list of field names, each optionally
+ * followed by ":asc" or ":desc", e.g. "precipType,formattedDate,temperature:desc".
+ */
+public class SortSpec {
+	private final List<Key> keys;
+
+	/**
+	 * One field of a spec and its direction.
+	 */
+	public static class Key {
+		private final WeatherField field;
+		private final boolean descending;
+
+		Key(WeatherField field, boolean descending) {
+			this.field = field;
+			this.descending = descending;
+		}
+
+		public WeatherField getField() { return field; }
+		public boolean isDescending() { return descending; }
+
+		@Override
+		public String toString() {
+			return field + (descending ? " desc" : " asc");
+		}
+	}
+
+	private SortSpec(List<Key> keys) {
+		this.keys = Collections.unmodifiableList(keys);
+	}
+
+	public static SortSpec of(WeatherField field, boolean descending) {
+		return new SortSpec(List.of(new Key(field, descending)));
+	}
+
+	/**
+	 * This spec with one more, less significant, field.
+	 */
+	public SortSpec then(WeatherField field, boolean descending) {
+		List<Key> next = new ArrayList<>(keys);
+		next.add(new Key(field, descending));
+		return new SortSpec(next);
+	}
+
+	/**
+	 * This spec with every direction flipped.
+	 */
+	public SortSpec reversed() {
+		List<Key> flipped = new ArrayList<>();
+		for (Key key : keys)
+			flipped.add(new Key(key.field, !key.descending));
+		return new SortSpec(flipped);
+	}
+
+	/**
+	 * Parses the text form; throws IllegalArgumentException on an unknown field or direction.
+	 */
+	public static SortSpec parse(String text) {
+		List<Key> keys = new ArrayList<>();
+		for (String part : text.split(",")) {
+			String[] nameAndOrder = part.trim().split(":", 2);
+			WeatherField field = field(nameAndOrder[0]);
+			if (field == null)
+				throw new IllegalArgumentException("Unknown sort field: " + nameAndOrder[0].trim());
+
+			String order = nameAndOrder.length > 1 ? nameAndOrder[1].trim().toLowerCase() : "asc";
+			if (!order.equals("asc") && !order.equals("desc"))
+				throw new IllegalArgumentException("Unknown sort order: " + order);
+			keys.add(new Key(field, order.equals("desc")));
+		}
+		return new SortSpec(keys);
+	}
+
+	/**
+	 * Maps a field name, ignoring case, spaces and underscores ("Wind Speed",
+	 * "windspeed", "WIND_SPEED"), to its WeatherField; null for unknown names.
+	 */
+	public static WeatherField field(String name) {
+		return switch (name.toLowerCase().replace(" ", "").replace("_", "")) {
+			case "temperature" -> WeatherField.TEMPERATURE;
+			case "apparenttemperature" -> WeatherField.APPARENT_TEMPERATURE;
+			case "humidity" -> WeatherField.HUMIDITY;
+			case "windspeed" -> WeatherField.WIND_SPEED;
+			case "windbearing" -> WeatherField.WIND_BEARING;
+			case "visibility" -> WeatherField.VISIBILITY;
+			case "loudcover", "cloudcover" -> WeatherField.CLOUD_COVER;
+			case "pressure" -> WeatherField.PRESSURE;
+			case "formatteddate" -> WeatherField.FORMATTED_DATE;
+			case "summary" -> WeatherField.SUMMARY;
+			case "preciptype" -> WeatherField.PRECIP_TYPE;
+			case "dailysummary" -> WeatherField.DAILY_SUMMARY;
+			default -> null;
+		};
+	}
+
+	public List<Key> getKeys() {
+		return keys;
+	}
+
+	/**
+	 * The chained comparator for this spec: dates by instant, text alphabetically
+	 * with nulls last, numbers by Double.compare.
+	 */
+	public Comparator<WeatherRecord> comparator() {
+		Comparator<WeatherRecord> comparator = null;
+		for (Key key : keys) {
+			Comparator<WeatherRecord> next = comparator(key.field);
+			if (key.descending)
+				next = next.reversed();
+			comparator = comparator == null ? next : comparator.thenComparing(next);
+		}
+		return comparator;
+	}
+
+	/**
+	 * The same order over rows of columnar data: dates by instant, text by
+	 * dictionary code, numbers by Double.compare. The columns are read when the
+	 * comparator is made, so rows added later need a new one.
+	 */
+	public Comparator<Integer> rowComparator(WeatherColumns columns) {
+		Comparator<Integer> comparator = null;
+		for (Key key : keys) {
+			Comparator<Integer> next = rowComparator(columns, key.field);
+			if (key.descending)
+				next = next.reversed();
+			comparator = comparator == null ? next : comparator.thenComparing(next);
+		}
+		return comparator;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder text = new StringBuilder();
+		for (Key key : keys)
+			text.append(text.length() == 0 ? "" : ", ").append(key);
+		return text.toString();
+	}
+
+	/*
+	 * Ascending comparator of one field
+	 */
+	static Comparator<WeatherRecord> comparator(WeatherField field) {
+		return switch (field) {
+			case FORMATTED_DATE -> Comparator.comparingLong(WeatherRecord::getEpochMillis);
+			case SUMMARY -> Comparator.comparing(WeatherRecord::getSummary, WeatherColumns.TEXT_ORDER);
+			case PRECIP_TYPE -> Comparator.comparing(WeatherRecord::getPrecipType, WeatherColumns.TEXT_ORDER);
+			case DAILY_SUMMARY -> Comparator.comparing(WeatherRecord::getDailySummary, WeatherColumns.TEXT_ORDER);
+			case TEMPERATURE -> Comparator.comparingDouble(WeatherRecord::getTemperature);
+			case APPARENT_TEMPERATURE -> Comparator.comparingDouble(WeatherRecord::getApparentTemperature);
+			case HUMIDITY -> Comparator.comparingDouble(WeatherRecord::getHumidity);
+			case WIND_SPEED -> Comparator.comparingDouble(WeatherRecord::getWindSpeed);
+			case WIND_BEARING -> Comparator.comparingDouble(WeatherRecord::getWindBearing);
+			case VISIBILITY -> Comparator.comparingDouble(WeatherRecord::getVisibility);
+			case CLOUD_COVER -> Comparator.comparingDouble(WeatherRecord::getLoudCover);
+			case PRESSURE -> Comparator.comparingDouble(WeatherRecord::getPressure);
+		};
+	}
+
+	/*
+	 * Ascending comparator of one field over rows of columns
+	 */
+	private static Comparator<Integer> rowComparator(WeatherColumns columns, WeatherField field) {
+		if (field == WeatherField.FORMATTED_DATE) {
+			long[] millis = columns.getEpochMillis();
+			return (a, b) -> Long.compare(millis[a], millis[b]);
+		}
+		if (WeatherColumnStore.isNumeric(field)) {
+			double[] column = columns.getColumn(field);
+			return (a, b) -> Double.compare(column[a], column[b]);
+		}
+		int[] codes = columns.getCodes(field);
+		return (a, b) -> Integer.compare(codes[a], codes[b]);
+	}
+}
@@ -0,0 +1,121 @@
+package algorithm;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters collected from one instrumented sort.
+ *
+ * Comparisons are counted by wrapping the comparator, so an uninstrumented
+ * sort runs the caller's comparator untouched. Swaps, element moves and
+ * recursion depth are reported by Sort only while a SortStats is attached.
+ * Counters are thread-safe so the parallel algorithms can share one instance.
+ *
+ * Allocation is counted per thread: the calling thread and every pool worker
+ * that runs part of the sort take a reading when they start and finish, and
+ * the total is the sum of each thread's growth. Other threads in the JVM are
+ * left out.
+ */
+public class SortStats {
+	private final LongAdder comparisons = new LongAdder();
+	private final LongAdder swaps = new LongAdder();
+	private final LongAdder moves = new LongAdder();
+	private final AtomicInteger maxDepth = new AtomicInteger();
+	// First and latest allocation reading of every thread that ran part of the sort
+	private final Map<Long, long[]> threadAllocations = new ConcurrentHashMap<>();
+	private long elapsedNanos;
+
+	/*
+	 * Wraps a comparator so every call is counted
+	 */
+	public <T> Comparator<T> counting(Comparator<T> comparator) {
+		return (x, y) -> {
+			comparisons.increment();
+			return comparator.compare(x, y);
+		};
+	}
+
+	void addSwap() {
+		swaps.increment();
+	}
+
+	void addMoves(long count) {
+		moves.add(count);
+	}
+
+	void recordDepth(int depth) {
+		maxDepth.accumulateAndGet(depth, Math::max);
+	}
+
+	/*
+	 * Takes an allocation reading of the current thread
+	 */
+	void sampleAllocation() {
+		sampleAllocation(Thread.currentThread());
+	}
+
+	/*
+	 * Takes an allocation reading of thread; its first reading is its baseline
+	 */
+	void sampleAllocation(Thread thread) {
+		long bytes = allocatedBytes(thread.getId());
+		if (bytes < 0)
+			return;
+
+		threadAllocations.merge(thread.getId(), new long[] { bytes, bytes }, (first, latest) -> {
+			first[1] = latest[1];
+			return first;
+		});
+	}
+
+	void setElapsedNanos(long elapsedNanos) {
+		this.elapsedNanos = elapsedNanos;
+	}
+
+	public long getComparisons() { return comparisons.sum(); }
+	public long getSwaps() { return swaps.sum(); }
+	public long getMoves() { return moves.sum(); }
+	public int getMaxDepth() { return maxDepth.get(); }
+	public long getElapsedNanos() { return elapsedNanos; }
+
+	/**
+	 * Bytes allocated while sorting, or -1 when the JVM cannot report it.
+	 */
+	public long getAllocatedBytes() {
+		if (threadAllocations.isEmpty())
+			return -1;
+
+		long total = 0;
+		for (long[] reading : threadAllocations.values())
+			total += reading[1] - reading[0];
+		return total;
+	}
+
+	@Override
+	public String toString() {
+		return "comparisons=" + getComparisons() +
+				", swaps=" + getSwaps() +
+				", moves=" + getMoves() +
+				", depth=" + getMaxDepth() +
+				", allocated=" + (getAllocatedBytes() < 0 ? "n/a" : getAllocatedBytes() + " B");
+	}
+
+	/*
+	 * Bytes allocated so far by one thread, or -1 if the JVM cannot report it
+	 */
+	private static long allocatedBytes(long threadId) {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (!(threads instanceof com.sun.management.ThreadMXBean))
+			return -1;
+
+		com.sun.management.ThreadMXBean allocation = (com.sun.management.ThreadMXBean) threads;
+		if (!allocation.isThreadAllocatedMemorySupported() || !allocation.isThreadAllocatedMemoryEnabled())
+			return -1;
+		return allocation.getThreadAllocatedBytes(threadId);
+	}
+}
@@ -0,0 +1,85 @@
+package algorithm;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Read-only view of a row permutation, forwards or backwards.
+ *
+ * reversed() is O(1) and shares the rows, so one ascending sort serves the
+ * descending order as well. The reversed order is exact except for rows that
+ * are equal on every sort key, which come out in reverse of their ascending
+ * order instead of in load order.
+ */
+public class SortedIndex {
+	private final int[] rows;
+	private final boolean reversed;
+
+	public SortedIndex(int[] rows) {
+		this(rows, false);
+	}
+
+	private SortedIndex(int[] rows, boolean reversed) {
+		this.rows = rows;
+		this.reversed = reversed;
+	}
+
+	public int size() {
+		return rows.length;
+	}
+
+	/**
+	 * Row at position i of this order.
+	 */
+	public int row(int i) {
+		return reversed ? rows[rows.length - 1 - i] : rows[i];
+	}
+
+	public boolean isReversed() {
+		return reversed;
+	}
+
+	/**
+	 * The same rows in the opposite order, without copying them.
+	 */
+	public SortedIndex reversed() {
+		return new SortedIndex(rows, !reversed);
+	}
+
+	/**
+	 * The first k rows of this order as a new array.
+	 */
+	public int[] toArray(int k) {
+		int[] result = new int[Math.max(0, Math.min(k, rows.length))];
+		for (int i = 0; i < result.length; ++i)
+			result[i] = row(i);
+		return result;
+	}
+
+	public int[] toArray() {
+		return toArray(rows.length);
+	}
+
+	/**
+	 * The first k elements of source in this order; source holds the rows the
+	 * index was built on.
+	 */
+	public <T> ArrayList<T> apply(List<T> source, int k) {
+		int count = Math.max(0, Math.min(k, rows.length));
+		ArrayList<T> result = new ArrayList<>(count);
+		for (int i = 0; i < count; ++i)
+			result.add(source.get(row(i)));
+		return result;
+	}
+
+	public <T> ArrayList<T> apply(List<T> source) {
+		return apply(source, rows.length);
+	}
+
+	/*
+	 * Heap bytes held by the rows array
+	 */
+	long bytes() {
+		return 16 + 4L * rows.length;
+	}
+}
@@ -0,0 +1,160 @@
+package algorithm;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import csv.WeatherRecord.WeatherField;
+
+/**
+ * Sorted row permutations of one dataset, kept so an order computed once is
+ * not computed again.
+ *
+ * Entries are keyed by sort spec and algorithm. A spec and its reversed()
+ * share one entry, stored with the first field ascending, so after sorting a
+ * field ascending the descending order is a reversed view of the same rows
+ * (see SortedIndex). The least recently used entries are dropped once the
+ * rows held pass the memory budget; an index larger than the whole budget is
+ * returned but not kept.
+ *
+ * The cache cannot see the data: whoever owns it must call invalidate()
+ * whenever rows are added, removed or changed. Not thread-safe.
+ */
+public class SortedIndexCache {
+	public static final long DEFAULT_MEMORY_BUDGET = 64L << 20;
+
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+	private long memoryBudget = DEFAULT_MEMORY_BUDGET;
+	private long bytes;
+	private long hits;
+	private long misses;
+
+	/*
+	 * A cached order, stored with its first field ascending
+	 */
+	private static class Entry {
+		final SortSpec spec;
+		final SortedIndex index;
+
+		Entry(SortSpec spec, SortedIndex index) {
+			this.spec = spec;
+			this.index = index;
+		}
+	}
+
+	/**
+	 * Sets the most bytes of rows kept, evicting entries if needed.
+	 */
+	public void setMemoryBudget(long memoryBudget) {
+		this.memoryBudget = memoryBudget;
+		evict();
+	}
+
+	public long getMemoryBudget() {
+		return memoryBudget;
+	}
+
+	/**
+	 * Bytes of rows currently kept.
+	 */
+	public long getMemoryUsed() {
+		return bytes;
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	public long getHits() {
+		return hits;
+	}
+
+	public long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * The cached order of spec under algorithm, reversed if only the opposite
+	 * order was sorted; null when neither is cached.
+	 */
+	public SortedIndex get(SortSpec spec, String algorithm) {
+		Entry entry = entries.get(key(spec, algorithm));
+		if (entry == null) {
+			misses++;
+			return null;
+		}
+
+		hits++;
+		return flipped(spec) ? entry.index.reversed() : entry.index;
+	}
+
+	/**
+	 * Any cached order whose first field is field, ascending by that field
+	 * whatever the other fields and the algorithm; null when there is none.
+	 */
+	public SortedIndex ascending(WeatherField field) {
+		for (Entry entry : entries.values()) {
+			if (entry.spec.getKeys().get(0).getField() == field) {
+				hits++;
+				return entry.index;
+			}
+		}
+
+		misses++;
+		return null;
+	}
+
+	/**
+	 * Caches rows, the order of spec under algorithm, and returns them as an index.
+	 */
+	public SortedIndex put(SortSpec spec, String algorithm, int[] rows) {
+		SortedIndex index = new SortedIndex(rows);
+		SortedIndex stored = flipped(spec) ? index.reversed() : index;
+
+		Entry previous = entries.put(key(spec, algorithm), new Entry(flipped(spec) ? spec.reversed() : spec, stored));
+		if (previous != null)
+			bytes -= previous.index.bytes();
+		bytes += stored.bytes();
+		evict();
+		return index;
+	}
+
+	/**
+	 * Drops every entry, for when the dataset changes.
+	 */
+	public void invalidate() {
+		entries.clear();
+		bytes = 0;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d indexes, %.1f of %.1f MB, %d hits, %d misses",
+			entries.size(), bytes / 1048576.0, memoryBudget / 1048576.0, hits, misses);
+	}
+
+	/*
+	 * Private helper methods
+	 */
+	private static boolean flipped(SortSpec spec) {
+		return spec.getKeys().get(0).isDescending();
+	}
+
+	/*
+	 * Entry key: the algorithm and the spec with its first field ascending
+	 */
+	private static String key(SortSpec spec, String algorithm) {
+		return algorithm.toLowerCase() + "|" + (flipped(spec) ? spec.reversed() : spec);
+	}
+
+	/*
+	 * Drops least recently used entries until the rows fit the budget
+	 */
+	private void evict() {
+		Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+		while (bytes > memoryBudget && iterator.hasNext()) {
+			bytes -= iterator.next().getValue().index.bytes();
+			iterator.remove();
+		}
+	}
+}
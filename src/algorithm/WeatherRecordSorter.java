@@ -1,13 +1,62 @@
 package algorithm;
 
+import csv.WeatherColumnStore;
+import csv.WeatherColumns;
 import csv.WeatherRecord;
+import csv.WeatherRecord.WeatherField;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.Arrays;
-import java.util.stream.IntStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.function.Function;
 
 public class WeatherRecordSorter {
     private final Sort<WeatherRecord> sorter = new Sort<>();
+    private final Sort<Integer> rowSorter = new Sort<>();
+    private int parallelism = ForkJoinPool.getCommonPoolParallelism();
+    private int parallelCutoff = Sort.DEFAULT_PARALLEL_CUTOFF;
+    private GapSequence gapSequence = GapSequence.DEFAULT;
+    private boolean metricsEnabled;
+    private SortStats lastStats;
+
+    /**
+     * Sets the number of worker threads used by the parallel algorithms.
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Sets the range size below which the parallel algorithms sort sequentially.
+     */
+    public void setParallelCutoff(int parallelCutoff) {
+        this.parallelCutoff = parallelCutoff;
+    }
+
+    /**
+     * Sets the gap sequence used by Shell sort.
+     */
+    public void setGapSequence(GapSequence gapSequence) {
+        this.gapSequence = gapSequence;
+    }
+
+    /**
+     * Turns sort instrumentation on or off. When off (the default) sortRecords
+     * runs the algorithms with the caller's comparator and no counters attached.
+     */
+    public void setMetricsEnabled(boolean metricsEnabled) {
+        this.metricsEnabled = metricsEnabled;
+    }
+
+    /**
+     * Returns the counters from the last sortRecords call, or null if metrics were disabled.
+     */
+    public SortStats getLastStats() {
+        return lastStats;
+    }
 
     /**
      * Sorts weather records based on the specified attribute and sort method.
@@ -33,91 +82,129 @@ public class WeatherRecordSorter {
         }
 
         WeatherRecord[] recordsArray = weatherRecords.toArray(new WeatherRecord[0]);
-
-        switch (sortMethod.toLowerCase()) {
-            case "quick":
-                sorter.quick(recordsArray, 0, recordsArray.length - 1, comparator);
-                break;
-            case "merge":
-                sorter.merge(recordsArray, 0, recordsArray.length - 1, comparator);
-                break;
-            case "shell":
-                sorter.shell(recordsArray, comparator);
-                break;
-            case "selection":
-                sorter.selection(recordsArray, comparator);
-                break;
-            default:
-                Arrays.sort(recordsArray, comparator);
-        }
+        sortRecords(recordsArray, comparator, sortMethod);
 
         weatherRecords.clear();
         weatherRecords.addAll(Arrays.asList(recordsArray));
     }
 
     /**
-     * Sorts the weather records based on an integer attribute using Radix Sort.
+     * Sorts the weather records on one attribute in linear time.
+     * Numeric attributes and the date (as epoch milliseconds) run an LSD Radix Sort
+     * on the values together with their row indices; other text attributes are dictionary-encoded with codes in
+     * alphabetical order and counting-sorted by code. The records are then
+     * gathered in that order.
      */
     private void sortWeatherRecordsUsingRadix(ArrayList<WeatherRecord> weatherRecords, String sortBy) {
-        int[] attributeArray = extractAttributeArray(weatherRecords, sortBy);
+        WeatherField field = getFieldForAttribute(sortBy);
+
+        if (field == null) {
+            throw new IllegalArgumentException("Invalid attribute for radix sort: " + sortBy);
+        }
+
+        int[] rows;
+        if (field == WeatherField.FORMATTED_DATE) {
+            long[] keys = new long[weatherRecords.size()];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = weatherRecords.get(i).getEpochMillis();
+            }
+            rows = IndexSort.identity(keys.length);
+            Sort.radix(keys, rows);
+        } else if (WeatherColumnStore.isNumeric(field)) {
+            double[] keys = extractAttributeArray(weatherRecords, field);
+            rows = IndexSort.identity(keys.length);
+            Sort.radix(keys, rows);
+        } else {
+            String[] values = new String[weatherRecords.size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = getText(weatherRecords.get(i), field);
+            }
+            int[] codes = new int[values.length];
+            int cardinality = encodeSorted(values, codes);
+            rows = IndexSort.counting(codes, codes.length, cardinality);
+        }
 
-        new Sort().radix(attributeArray);
-        rebuildWeatherRecords(weatherRecords, attributeArray, sortBy);
+        rebuildWeatherRecords(weatherRecords, rows);
     }
 
-    /**
-     * Extracts an array of integer values from the specified attribute of WeatherRecords for Radix Sort.
-     */
-    private int[] extractAttributeArray(ArrayList<WeatherRecord> weatherRecords, String sortBy) {
-        return weatherRecords.stream()
-            .mapToInt(record -> {
-                switch (sortBy.toLowerCase()) {
-                    case "temperature": return (int) record.getTemperature();
-                    case "pressure": return (int) record.getPressure();
-                    case "humidity": return (int) (record.getHumidity() * 100);
-                    case "windspeed": return (int) record.getWindSpeed();
-                    case "windbearing": return (int) record.getWindBearing();
-                    case "visibility": return (int) record.getVisibility();
-                    default: throw new IllegalArgumentException("Invalid attribute for radix sort");
-                }
-            }).toArray();
+    private static String getText(WeatherRecord record, WeatherField field) {
+        return switch (field) {
+            case FORMATTED_DATE -> record.getFormattedDate();
+            case SUMMARY -> record.getSummary();
+            case PRECIP_TYPE -> record.getPrecipType();
+            case DAILY_SUMMARY -> record.getDailySummary();
+            default -> throw new IllegalArgumentException("Not a text attribute: " + field);
+        };
     }
 
     /**
-     * Rebuilds the weatherRecords list to match the sorted order of the attribute array.
+     * Fills codes with the alphabetical rank (nulls last) of each value among the
+     * distinct values, and returns the number of distinct values.
      */
-    private void rebuildWeatherRecords(ArrayList<WeatherRecord> weatherRecords, int[] sortedAttributes, String sortBy) {
-        ArrayList<WeatherRecord> sortedRecords = new ArrayList<>(weatherRecords.size());
+    private static int encodeSorted(String[] values, int[] codes) {
+        // HashMap accepts the null key, so a missing value is just one more entry
+        HashMap<String, Integer> lookup = new HashMap<>();
+        ArrayList<String> distinct = new ArrayList<>();
+
+        for (int i = 0; i < values.length; i++) {
+            Integer code = lookup.get(values[i]);
+            if (code == null) {
+                code = distinct.size();
+                distinct.add(values[i]);
+                lookup.put(values[i], code);
+            }
+            codes[i] = code;
+        }
 
-        IntStream.range(0, sortedAttributes.length)
-            .mapToObj(i -> findAndRemoveMatchingRecord(weatherRecords, sortedAttributes[i], sortBy))
-            .forEach(sortedRecords::add);
+        Integer[] byValue = new Integer[distinct.size()];
+        for (int code = 0; code < byValue.length; code++) {
+            byValue[code] = code;
+        }
+        Arrays.sort(byValue, Comparator.comparing(distinct::get, WeatherColumns.TEXT_ORDER));
 
-        weatherRecords.clear();
-        weatherRecords.addAll(sortedRecords);
+        int[] rankOfCode = new int[byValue.length];
+        for (int rank = 0; rank < byValue.length; rank++) {
+            rankOfCode[byValue[rank]] = rank;
+        }
+        for (int i = 0; i < codes.length; i++) {
+            codes[i] = rankOfCode[codes[i]];
+        }
+        return byValue.length;
     }
 
     /**
-     * Finds and removes the first WeatherRecord matching a given attribute value.
+     * Extracts the values of a numeric attribute of WeatherRecords for Radix Sort.
      */
-    private WeatherRecord findAndRemoveMatchingRecord(ArrayList<WeatherRecord> records, int attributeValue, String sortBy) {
-        for (int i = 0; i < records.size(); i++) {
-            WeatherRecord record = records.get(i);
-            int valueToCompare = switch (sortBy.toLowerCase()) {
-                case "temperature" -> (int) record.getTemperature();
-                case "pressure" -> (int) record.getPressure();
-                case "humidity" -> (int) (record.getHumidity() * 100);
-                case "windspeed" -> (int) record.getWindSpeed();
-                case "windbearing" -> (int) record.getWindBearing();
-                case "visibility" -> (int) record.getVisibility();
-                default -> throw new IllegalArgumentException("Invalid attribute for radix sort");
+    private double[] extractAttributeArray(List<WeatherRecord> weatherRecords, WeatherField field) {
+        double[] keys = new double[weatherRecords.size()];
+        for (int i = 0; i < keys.length; i++) {
+            WeatherRecord record = weatherRecords.get(i);
+            keys[i] = switch (field) {
+                case TEMPERATURE -> record.getTemperature();
+                case APPARENT_TEMPERATURE -> record.getApparentTemperature();
+                case HUMIDITY -> record.getHumidity();
+                case WIND_SPEED -> record.getWindSpeed();
+                case WIND_BEARING -> record.getWindBearing();
+                case VISIBILITY -> record.getVisibility();
+                case CLOUD_COVER -> record.getLoudCover();
+                case PRESSURE -> record.getPressure();
+                default -> throw new IllegalArgumentException("Invalid attribute for radix sort: " + field);
             };
+        }
+        return keys;
+    }
 
-            if (valueToCompare == attributeValue) {
-                return records.remove(i);
-            }
+    /**
+     * Rebuilds the weatherRecords list in the order given by a row permutation.
+     */
+    private void rebuildWeatherRecords(ArrayList<WeatherRecord> weatherRecords, int[] rows) {
+        WeatherRecord[] sortedRecords = new WeatherRecord[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            sortedRecords[i] = weatherRecords.get(rows[i]);
         }
-        return null;
+
+        weatherRecords.clear();
+        weatherRecords.addAll(Arrays.asList(sortedRecords));
     }
 
     /**
@@ -135,37 +222,430 @@ public class WeatherRecordSorter {
 			case "loudcover" -> Comparator.comparingDouble(WeatherRecord::getLoudCover);
 			case "pressure" -> Comparator.comparingDouble(WeatherRecord::getPressure);
 	
-			// Date field, sorts by date in chronological order
-			case "formatted date" -> Comparator.comparing(WeatherRecord::getFormattedDate);
+			// Date field, sorts by instant, so differing UTC offsets are ordered correctly
+			case "formatted date" -> Comparator.comparingLong(WeatherRecord::getEpochMillis);
 	
 			// Sorts by alphabetic order, handling nulls if necessary
-			case "summary" -> Comparator.comparing(WeatherRecord::getSummary, Comparator.nullsLast(String::compareTo));
-			case "preciptype" -> Comparator.comparing(WeatherRecord::getPrecipType, Comparator.nullsLast(String::compareTo));
-			case "dailysummary" -> Comparator.comparing(WeatherRecord::getDailySummary, Comparator.nullsLast(String::compareTo));
+			case "summary" -> Comparator.comparing(WeatherRecord::getSummary, WeatherColumns.TEXT_ORDER);
+			case "preciptype" -> Comparator.comparing(WeatherRecord::getPrecipType, WeatherColumns.TEXT_ORDER);
+			case "dailysummary" -> Comparator.comparing(WeatherRecord::getDailySummary, WeatherColumns.TEXT_ORDER);
 	
 			default -> null;
 		};
 	}
 
+    /**
+     * Maps a sort attribute name, as accepted by getComparatorForAttribute, to its WeatherField.
+     * Returns null for unknown attributes.
+     */
+    public WeatherField getFieldForAttribute(String sortBy) {
+        return SortSpec.field(sortBy);
+    }
+
+    /**
+     * Sorts columnar data (a WeatherColumnStore or a LazyColumnFile) by one field without moving any rows.
+     * Returns the row permutation in ascending order; ties keep load order.
+     */
+    public int[] sortPermutation(WeatherColumns store, WeatherField field) {
+        return sortPermutation(store, field, "merge");
+    }
+
+    /**
+     * Sorts columnar data by one field with the given method.
+     * Dates are radix-sorted by instant and other text fields are counting-sorted
+     * by dictionary code. On numeric fields "radix" runs an O(n) LSD radix sort;
+     * other methods use a stable merge sort.
+     */
+    public int[] sortPermutation(WeatherColumns store, WeatherField field, String sortMethod) {
+        if (field == WeatherField.FORMATTED_DATE) {
+            // Always radix: stable, so the result is the one any stable method would give
+            long[] keys = store.getEpochMillis().clone();
+            int[] rows = IndexSort.identity(keys.length);
+            Sort.radix(keys, rows);
+            return rows;
+        }
+        if (WeatherColumnStore.isNumeric(field) && "radix".equalsIgnoreCase(sortMethod)) {
+            double[] keys = store.getColumn(field).clone();
+            int[] rows = IndexSort.identity(keys.length);
+            Sort.radix(keys, rows);
+            return rows;
+        }
+        if (WeatherColumnStore.isNumeric(field)) {
+            return IndexSort.sort(store.getColumn(field), store.size());
+        }
+        return IndexSort.counting(store.getCodes(field), store.size(), store.getCardinality(field));
+    }
+
+    /**
+     * Sorts columnar data by a multi-field spec without moving any rows; ties keep load order.
+     * Every field is turned into dense ranks (text fields already are, as dictionary codes)
+     * and the ranks are packed into long keys for radix sorting.
+     */
+    public int[] sortPermutation(WeatherColumns store, SortSpec spec) {
+        List<SortSpec.Key> keys = spec.getKeys();
+        int[] cardinalities = new int[keys.size()];
+        int[][] ranks = rankColumns(store, keys, cardinalities);
+        return packedOrder(keys, ranks, cardinalities, store.size());
+    }
+
+    /**
+     * The first k rows of sortPermutation(store, spec), without ordering the rest, in O(n log k)
+     * after building the keys. One field is compared on its raw values; several are ranked
+     * and packed into a single long, or fully sorted when they need more than 63 bits.
+     */
+    public int[] topPermutation(WeatherColumns store, SortSpec spec, int k) {
+        List<SortSpec.Key> keys = spec.getKeys();
+        int n = store.size();
+        long[] packed;
+
+        if (keys.size() == 1) {
+            WeatherField field = keys.get(0).getField();
+            packed = new long[n];
+            if (field == WeatherField.FORMATTED_DATE) {
+                System.arraycopy(store.getEpochMillis(), 0, packed, 0, n);
+            } else if (WeatherColumnStore.isNumeric(field)) {
+                double[] column = store.getColumn(field);
+                for (int i = 0; i < n; i++) {
+                    packed[i] = Sort.sortableBits(column[i]);
+                }
+            } else {
+                int[] codes = store.getCodes(field);
+                for (int i = 0; i < n; i++) {
+                    packed[i] = codes[i];
+                }
+            }
+            if (keys.get(0).isDescending()) {
+                for (int i = 0; i < n; i++) {
+                    packed[i] = ~packed[i];
+                }
+            }
+        } else {
+            int[] cardinalities = new int[keys.size()];
+            int[][] ranks = rankColumns(store, keys, cardinalities);
+            flipDescending(keys, ranks, cardinalities, n);
+            packed = IndexSort.pack(ranks, cardinalities, n);
+            if (packed == null) {
+                return Arrays.copyOf(IndexSort.packed(ranks, cardinalities, n), Math.min(k, n));
+            }
+        }
+
+        return IndexSort.top(packed, n, k);
+    }
+
+    /**
+     * Dense ranks of every field of the spec, filling in their cardinalities.
+     */
+    private static int[][] rankColumns(WeatherColumns store, List<SortSpec.Key> keys, int[] cardinalities) {
+        int n = store.size();
+        int[][] ranks = new int[keys.size()][];
+
+        for (int k = 0; k < ranks.length; k++) {
+            WeatherField field = keys.get(k).getField();
+            if (field == WeatherField.FORMATTED_DATE) {
+                ranks[k] = new int[n];
+                cardinalities[k] = IndexSort.rank(store.getEpochMillis(), n, ranks[k]);
+            } else if (WeatherColumnStore.isNumeric(field)) {
+                ranks[k] = new int[n];
+                cardinalities[k] = IndexSort.rank(store.getColumn(field), n, ranks[k]);
+            } else {
+                ranks[k] = store.getCodes(field);
+                cardinalities[k] = store.getCardinality(field);
+            }
+        }
+        return ranks;
+    }
+
+    /**
+     * Sorts records by a multi-field spec. "radix" ranks every field, packs the ranks
+     * into long keys and radix-sorts those, so no comparator runs; other methods use
+     * the spec's chained comparator.
+     */
+    public void sortRecords(WeatherRecord[] records, SortSpec spec, String algorithm) {
+        if (!"radix".equalsIgnoreCase(algorithm)) {
+            sortRecords(records, spec.comparator(), algorithm);
+            return;
+        }
+
+        SortStats stats = metricsEnabled ? new SortStats() : null;
+        if (stats != null) {
+            stats.sampleAllocation();
+        }
+        long startTime = System.nanoTime();
+
+        List<SortSpec.Key> keys = spec.getKeys();
+        List<WeatherRecord> list = Arrays.asList(records);
+        int n = records.length;
+        int[][] ranks = new int[keys.size()][];
+        int[] cardinalities = new int[keys.size()];
+
+        for (int k = 0; k < ranks.length; k++) {
+            WeatherField field = keys.get(k).getField();
+            ranks[k] = new int[n];
+            if (field == WeatherField.FORMATTED_DATE) {
+                long[] epochMillis = new long[n];
+                for (int i = 0; i < n; i++) {
+                    epochMillis[i] = records[i].getEpochMillis();
+                }
+                cardinalities[k] = IndexSort.rank(epochMillis, n, ranks[k]);
+            } else if (WeatherColumnStore.isNumeric(field)) {
+                cardinalities[k] = IndexSort.rank(extractAttributeArray(list, field), n, ranks[k]);
+            } else {
+                String[] values = new String[n];
+                for (int i = 0; i < n; i++) {
+                    values[i] = getText(records[i], field);
+                }
+                cardinalities[k] = encodeSorted(values, ranks[k]);
+            }
+        }
+
+        int[] rows = packedOrder(keys, ranks, cardinalities, n);
+        WeatherRecord[] unsorted = records.clone();
+        for (int i = 0; i < n; i++) {
+            records[i] = unsorted[rows[i]];
+        }
+
+        if (stats != null) {
+            stats.setElapsedNanos(System.nanoTime() - startTime);
+            stats.sampleAllocation();
+            stats.addMoves(n);
+        }
+        lastStats = stats;
+    }
+
+    /**
+     * Flips the ranks of descending fields and sorts rows by all of them.
+     */
+    private static int[] packedOrder(List<SortSpec.Key> keys, int[][] ranks, int[] cardinalities, int n) {
+        flipDescending(keys, ranks, cardinalities, n);
+        return IndexSort.packed(ranks, cardinalities, n);
+    }
+
+    /**
+     * Replaces the ranks of descending fields with their mirror image.
+     */
+    private static void flipDescending(List<SortSpec.Key> keys, int[][] ranks, int[] cardinalities, int n) {
+        for (int k = 0; k < ranks.length; k++) {
+            if (keys.get(k).isDescending()) {
+                int[] flipped = new int[n];
+                int top = cardinalities[k] - 1;
+                for (int i = 0; i < n; i++) {
+                    flipped[i] = top - ranks[k][i];
+                }
+                ranks[k] = flipped;
+            }
+        }
+    }
+
     /**
      * Additional method to provide a direct way to sort using arrays, for `MainWindow`.
      */
     public void sortRecords(WeatherRecord[] records, Comparator<WeatherRecord> comparator, String algorithm) {
+        measure(sorter, comparator, counted -> {
+            runAlgorithm(sorter, records, counted, algorithm);
+            return null;
+        });
+    }
+
+    /**
+     * Returns the k records that come first in comparator order, as the first k of a stable
+     * sort would, without sorting the rest. "heap" (the default) keeps a bounded heap,
+     * O(n log k); "parallel heap" keeps one heap per chunk and merges them; "quickselect"
+     * partitions a copy around the k-th record and sorts the prefix, and is not stable.
+     */
+    public WeatherRecord[] topRecords(WeatherRecord[] records, Comparator<WeatherRecord> comparator, int k, String algorithm) {
+        return measure(sorter, comparator, counted -> runTop(sorter, records, counted, k, algorithm));
+    }
+
+    /**
+     * Sorts rows of columnar data by a spec with the given algorithm, as sortRecords sorts
+     * records, and returns them in their new order; rows is not modified. "radix" ranks the
+     * fields and radix-sorts packed keys; other algorithms compare rows by their column values.
+     */
+    public int[] sortRows(WeatherColumns columns, int[] rows, SortSpec spec, String algorithm) {
+        if (!"radix".equalsIgnoreCase(algorithm)) {
+            Integer[] boxed = box(rows);
+            measure(rowSorter, spec.rowComparator(columns), counted -> {
+                runAlgorithm(rowSorter, boxed, counted, algorithm);
+                return null;
+            });
+            return unbox(boxed, boxed.length);
+        }
+
+        SortStats stats = metricsEnabled ? new SortStats() : null;
+        if (stats != null) {
+            stats.sampleAllocation();
+        }
+        long startTime = System.nanoTime();
+
+        // Ranks over every row, gathered in the order of rows so ties keep it
+        List<SortSpec.Key> keys = spec.getKeys();
+        int[] cardinalities = new int[keys.size()];
+        int[][] ranks = rankColumns(columns, keys, cardinalities);
+        for (int k = 0; k < ranks.length; k++) {
+            int[] gathered = new int[rows.length];
+            for (int i = 0; i < rows.length; i++) {
+                gathered[i] = ranks[k][rows[i]];
+            }
+            ranks[k] = gathered;
+        }
+
+        int[] positions = packedOrder(keys, ranks, cardinalities, rows.length);
+        int[] sorted = new int[rows.length];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = rows[positions[i]];
+        }
+
+        if (stats != null) {
+            stats.setElapsedNanos(System.nanoTime() - startTime);
+            stats.sampleAllocation();
+            stats.addMoves(rows.length);
+        }
+        lastStats = stats;
+        return sorted;
+    }
+
+    /**
+     * The first k of rows in spec order, selected as topRecords selects records.
+     */
+    public int[] topRows(WeatherColumns columns, int[] rows, SortSpec spec, int k, String algorithm) {
+        Integer[] boxed = box(rows);
+        Integer[] top = measure(rowSorter, spec.rowComparator(columns), counted -> runTop(rowSorter, boxed, counted, k, algorithm));
+        return unbox(top, top.length);
+    }
+
+    /**
+     * Merges new rows into rows already sorted by spec, as mergeSorted merges records.
+     * merged holds the n sorted rows followed by the new ones and is updated in place;
+     * returns the positions the new rows ended up at, ascending.
+     */
+    public int[] mergeRows(WeatherColumns columns, int[] merged, int n, SortSpec spec) {
+        Comparator<Integer> comparator = spec.rowComparator(columns);
+        Integer[] all = box(merged);
+        Integer[] added = Arrays.copyOfRange(all, n, all.length);
+        Arrays.sort(added, comparator);
+
+        int[] positions = rowSorter.mergeInto(all, n, added, comparator);
+        System.arraycopy(unbox(all, all.length), 0, merged, 0, merged.length);
+        return positions;
+    }
+
+    private <T> T[] runTop(Sort<T> sort, T[] a, Comparator<T> comparator, int k, String algorithm) {
+        switch (algorithm.toLowerCase()) {
+            case "quickselect":
+                T[] copy = a.clone();
+                sort.partial(copy, k, comparator);
+                return Arrays.copyOf(copy, Math.max(0, Math.min(k, copy.length)));
+            case "parallel heap":
+                return sort.parallelTopK(a, k, comparator, parallelism, parallelCutoff);
+            default:
+                return sort.topK(a, k, comparator);
+        }
+    }
+
+    private static Integer[] box(int[] rows) {
+        Integer[] boxed = new Integer[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            boxed[i] = rows[i];
+        }
+        return boxed;
+    }
+
+    private static int[] unbox(Integer[] boxed, int n) {
+        int[] rows = new int[n];
+        for (int i = 0; i < n; i++) {
+            rows[i] = boxed[i];
+        }
+        return rows;
+    }
+
+    /**
+     * Runs a comparison-based operation with the caller's comparator, or, when metrics are
+     * enabled, with a counting comparator and counters attached; sets lastStats either way.
+     */
+    private <T, R> R measure(Sort<T> sort, Comparator<T> comparator, Function<Comparator<T>, R> operation) {
+        if (!metricsEnabled) {
+            lastStats = null;
+            return operation.apply(comparator);
+        }
+
+        SortStats stats = new SortStats();
+        sort.setStats(stats);
+        stats.sampleAllocation();
+        long startTime = System.nanoTime();
+
+        try {
+            return operation.apply(stats.counting(comparator));
+        } finally {
+            stats.setElapsedNanos(System.nanoTime() - startTime);
+            stats.sampleAllocation();
+            sort.setStats(null);
+            lastStats = stats;
+        }
+    }
+
+    /**
+     * Merges new records into records, which must already be sorted by comparator.
+     * The batch is sorted on its own and merged in, O(n + k log k) for k new records
+     * instead of sorting all n + k again; equal records keep the old ones first.
+     * Returns the indices the new records ended up at, ascending.
+     */
+    public int[] mergeSorted(ArrayList<WeatherRecord> records, List<WeatherRecord> batch, Comparator<WeatherRecord> comparator) {
+        WeatherRecord[] added = batch.toArray(new WeatherRecord[0]);
+        Arrays.sort(added, comparator);
+
+        int n = records.size();
+        WeatherRecord[] merged = records.toArray(new WeatherRecord[n + added.length]);
+        int[] positions = sorter.mergeInto(merged, n, added, comparator);
+
+        records.clear();
+        records.addAll(Arrays.asList(merged));
+        return positions;
+    }
+
+    private <T> void runAlgorithm(Sort<T> sort, T[] a, Comparator<T> comparator, String algorithm) {
         switch (algorithm.toLowerCase()) {
             case "quick":
-                sorter.quick(records, 0, records.length - 1, comparator);
+                sort.quick(a, 0, a.length - 1, comparator);
                 break;
             case "merge":
-                sorter.merge(records, 0, records.length - 1, comparator);
+                sort.merge(a, 0, a.length - 1, comparator);
                 break;
             case "shell":
-                sorter.shell(records, comparator);
+                sort.shell(a, comparator, gapSequence);
                 break;
             case "selection":
-                sorter.selection(records, comparator);
+                sort.selection(a, comparator);
+                break;
+            case "parallel quick":
+                sort.parallelQuick(a, comparator, parallelism, parallelCutoff);
+                break;
+            case "parallel merge":
+                sort.parallelMerge(a, comparator, parallelism, parallelCutoff);
+                break;
+            case "parallel sort":
+                sampleCommonPool(sort.getStats());
+                Arrays.parallelSort(a, comparator);
+                sampleCommonPool(sort.getStats());
                 break;
             default:
-                Arrays.sort(records, comparator);
+                Arrays.sort(a, comparator);
+        }
+    }
+
+    /**
+     * Takes an allocation reading of every common pool worker, the threads
+     * Arrays.parallelSort runs on. The parallel algorithms of Sort read their
+     * own workers; workers started mid-sort count from their first reading.
+     */
+    private static void sampleCommonPool(SortStats stats) {
+        if (stats == null) {
+            return;
+        }
+
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread instanceof ForkJoinWorkerThread && ((ForkJoinWorkerThread) thread).getPool() == ForkJoinPool.commonPool()) {
+                stats.sampleAllocation(thread);
+            }
         }
     }
 }
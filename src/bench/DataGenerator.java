@@ -0,0 +1,95 @@
+package bench;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Random;
+
+import csv.Reader;
+
+/**
+ * Writes synthetic weather CSVs with the same schema as weatherHistory.csv.
+ *
+ * Datasets are generated once, ahead of benchmarking, so that SortBenchmark
+ * runs on identical inputs every time. Values are drawn from ranges similar
+ * to the real data and include negative temperatures.
+ *
+ * Usage: java -cp out bench.DataGenerator <output dir> <rows> [rows...]
+ * Writes one file per size, named synthetic-<rows>.csv.
+ */
+public class DataGenerator {
+	private static final String[] SUMMARIES = {
+		"Partly Cloudy", "Mostly Cloudy", "Overcast", "Foggy", "Clear", "Breezy and Overcast",
+		"Breezy and Mostly Cloudy", "Light Rain", "Drizzle", "Humid and Mostly Cloudy"
+	};
+	private static final String[] PRECIP_TYPES = { "rain", "snow", "null" };
+	private static final String[] DAILY_SUMMARIES = {
+		"Partly cloudy throughout the day.", "Mostly cloudy throughout the day.", "Foggy in the evening.",
+		"Overcast throughout the day.", "Light rain until morning.", "Clear throughout the day.",
+		"Foggy starting overnight continuing until morning.", "Breezy in the afternoon."
+	};
+	private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS");
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.out.println("Usage: DataGenerator <output dir> <rows> [rows...]");
+			return;
+		}
+
+		File dir = new File(args[0]);
+		dir.mkdirs();
+
+		for (int i = 1; i < args.length; ++i) {
+			int rows = Integer.parseInt(args[i]);
+			File file = new File(dir, fileName(rows));
+			write(file, rows, 42L + rows);
+			System.out.printf("Wrote %s (%d rows, %.1f MB)%n", file, rows, file.length() / 1e6);
+		}
+	}
+
+	static String fileName(int rows) {
+		return "synthetic-" + rows + ".csv";
+	}
+
+	static void write(File file, int rows, long seed) throws IOException {
+		Random random = new Random(seed);
+		LocalDateTime start = LocalDateTime.of(2006, 1, 1, 0, 0);
+
+		try (BufferedWriter out = new BufferedWriter(new FileWriter(file), 1 << 16)) {
+			out.write(Reader.CSV_HEADER);
+			out.newLine();
+
+			for (int row = 0; row < rows; ++row) {
+				LocalDateTime time = start.plusHours(row);
+				String offset = time.getMonthValue() > 3 && time.getMonthValue() < 11 ? " +0200" : " +0100";
+				double temperature = -20 + 55 * random.nextDouble();
+
+				out.write(DATE_FORMAT.format(time) + offset);
+				out.write(',');
+				out.write(SUMMARIES[random.nextInt(SUMMARIES.length)]);
+				out.write(',');
+				out.write(PRECIP_TYPES[random.nextInt(PRECIP_TYPES.length)]);
+				out.write(',');
+				out.write(Double.toString(temperature));
+				out.write(',');
+				out.write(Double.toString(temperature - 4 * random.nextDouble()));
+				out.write(',');
+				out.write(Double.toString(Math.round(random.nextDouble() * 100) / 100.0));
+				out.write(',');
+				out.write(Double.toString(Math.round(random.nextDouble() * 600000) / 10000.0));
+				out.write(',');
+				out.write(Double.toString(random.nextInt(360)));
+				out.write(',');
+				out.write(Double.toString(Math.round(random.nextDouble() * 160000) / 10000.0));
+				out.write(",0.0,");
+				out.write(Double.toString(Math.round((990 + 50 * random.nextDouble()) * 100) / 100.0));
+				out.write(',');
+				out.write(DAILY_SUMMARIES[random.nextInt(DAILY_SUMMARIES.length)]);
+				out.newLine();
+			}
+		}
+	}
+}
@@ -0,0 +1,68 @@
+package bench;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Random;
+
+import algorithm.GapSequence;
+import algorithm.Sort;
+import algorithm.WeatherRecordSorter;
+import csv.Reader;
+import csv.WeatherRecord;
+
+/**
+ * Times Sort.shell with every GapSequence on every weather field and reports
+ * the fastest sequence per field.
+ *
+ * Usage: java -cp out bench.GapSequenceBenchmark [csv file] [warmup] [iterations]
+ */
+public class GapSequenceBenchmark {
+	public static void main(String[] args) throws IOException {
+		String path = args.length > 0 ? args[0] : "res/csv/weatherHistory.csv";
+		int warmup = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+		int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+		ArrayList<WeatherRecord> records = new Reader(path).readWeatherRecord();
+		Collections.shuffle(records, new Random(42));
+		WeatherRecord[] shuffled = records.toArray(new WeatherRecord[0]);
+
+		WeatherRecordSorter recordSorter = new WeatherRecordSorter();
+		Sort<WeatherRecord> sorter = new Sort<>();
+		GapSequence[] sequences = GapSequence.values();
+
+		System.out.printf("%d rows, %d warmup, %d measured iterations (median ms)%n", shuffled.length, warmup, iterations);
+		System.out.printf("%-20s", "field");
+		for (GapSequence sequence : sequences)
+			System.out.printf("%12s", sequence);
+		System.out.printf("%12s%n", "winner");
+
+		for (String attribute : SortBenchmark.ATTRIBUTES) {
+			Comparator<WeatherRecord> comparator = recordSorter.getComparatorForAttribute(attribute);
+			GapSequence winner = null;
+			double best = Double.MAX_VALUE;
+
+			System.out.printf("%-20s", attribute);
+			for (GapSequence sequence : sequences) {
+				double millis = medianMillis(sorter, shuffled, comparator, sequence, warmup, iterations);
+				System.out.printf("%12.2f", millis);
+
+				if (millis < best) {
+					best = millis;
+					winner = sequence;
+				}
+			}
+			System.out.printf("%12s%n", winner);
+		}
+	}
+
+	private static double medianMillis(Sort<WeatherRecord> sorter, WeatherRecord[] input, Comparator<WeatherRecord> comparator,
+									   GapSequence sequence, int warmup, int iterations) {
+		Measurement measurement = Measurement.run(input::clone, copy -> {
+			sorter.shell(copy, comparator, sequence);
+			return Measurement.middle(copy);
+		}, warmup, iterations);
+		return measurement.medianNanos() / 1e6;
+	}
+}
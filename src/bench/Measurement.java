@@ -0,0 +1,71 @@
+package bench;
+
+import java.util.Arrays;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Repeated timing of one operation, with warmup iterations discarded.
+ *
+ * Every iteration gets fresh input from the supplier, built outside the timed
+ * region, so the work measured is the same on each run and input preparation
+ * never counts against the algorithm.
+ *
+ * The operation returns a value read from its result, such as one element of
+ * a sorted array, which is folded into a volatile sink. The JIT cannot prove
+ * the work unused and drop it, the job JMH's Blackhole does.
+ */
+public class Measurement {
+	private static volatile int sink;
+
+	private final long[] samples;
+
+	private Measurement(long[] samples) {
+		this.samples = samples;
+		Arrays.sort(this.samples);
+	}
+
+	public static <T> Measurement run(Supplier<T> input, Function<T, ?> operation, int warmup, int iterations) {
+		long[] samples = new long[iterations];
+
+		for (int i = 0; i < warmup + iterations; ++i) {
+			T data = input.get();
+
+			long start = System.nanoTime();
+			Object result = operation.apply(data);
+			long elapsed = System.nanoTime() - start;
+			sink += System.identityHashCode(result);
+
+			if (i >= warmup)
+				samples[i - warmup] = elapsed;
+		}
+
+		return new Measurement(samples);
+	}
+
+	/**
+	 * The middle element of a sorted array, or null when it is empty: a cheap
+	 * value that depends on the whole sort, for operations to return.
+	 */
+	public static Object middle(Object[] sorted) {
+		return sorted.length == 0 ? null : sorted[sorted.length / 2];
+	}
+
+	public int iterations() { return samples.length; }
+	public long minNanos() { return samples[0]; }
+	public long maxNanos() { return samples[samples.length - 1]; }
+	public long medianNanos() { return samples[samples.length / 2]; }
+
+	public double meanNanos() {
+		double sum = 0;
+		for (long sample : samples) sum += sample;
+		return sum / samples.length;
+	}
+
+	public double stdDevNanos() {
+		double mean = meanNanos();
+		double sum = 0;
+		for (long sample : samples) sum += (sample - mean) * (sample - mean);
+		return samples.length > 1 ? Math.sqrt(sum / (samples.length - 1)) : 0;
+	}
+}
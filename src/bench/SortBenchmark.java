@@ -0,0 +1,284 @@
+package bench;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import algorithm.WeatherRecordSorter;
+import cli.Options;
+import csv.Reader;
+import csv.WeatherRecord;
+
+/**
+ * Benchmarks every sorting algorithm on every weather field over several input
+ * distributions and dataset sizes.
+ *
+ * Input files are produced beforehand by DataGenerator. For each combination
+ * the sort runs a number of warmup iterations, so the JIT has compiled the hot
+ * paths, followed by measured iterations on fresh copies of the same input.
+ * Results are printed as a table and can be exported as JSON for regression tracking.
+ *
+ * Each algorithm runs in its own JVM, started with the same JVM arguments, so
+ * the JIT profile and heap left by one algorithm never skew the next; the
+ * parent only collects the results. --in-process runs everything in one JVM.
+ *
+ * Usage: java -cp out bench.SortBenchmark [--data dir] [--sizes 10000,100000]
+ *        [--fields temperature,summary] [--algorithms quick,merge] [--distributions random,sorted]
+ *        [--warmup 3] [--iterations 5] [--quadratic-limit 100000] [--json results.json]
+ *        [--in-process]
+ */
+public class SortBenchmark {
+	static final String[] ATTRIBUTES = {
+		"temperature", "apparenttemperature", "humidity", "windspeed", "windbearing", "visibility",
+		"loudcover", "pressure", "formatted date", "summary", "preciptype", "dailysummary"
+	};
+	static final String[] ALGORITHMS = {
+		"quick", "merge", "shell", "selection", "radix", "parallel quick", "parallel merge", "sort", "parallel sort"
+	};
+	static final String[] DISTRIBUTIONS = { "random", "sorted", "reversed", "few-unique", "sawtooth" };
+
+	// Handled by the parent JVM and not passed on to forked runs
+	private static final Set<String> PARENT_OPTIONS = Set.of("algorithms", "json", "results", "in-process");
+
+	private static final int FEW_UNIQUE_VALUES = 16;
+	private static final int SAWTOOTH_TEETH = 16;
+
+	private final WeatherRecordSorter recordSorter = new WeatherRecordSorter();
+	private final List<String> results = new ArrayList<>();
+
+	public static void main(String[] args) throws IOException {
+		Map<String, String> options;
+		int[] sizes;
+		int warmup, iterations, quadraticLimit;
+		try {
+			options = Options.parse(args);
+			sizes = Options.getInts(options, "sizes", new int[] { 10000, 100000, 1000000, 10000000 }, 1);
+			warmup = Options.getInt(options, "warmup", 3, 0);
+			iterations = Options.getInt(options, "iterations", 5, 1);
+			quadraticLimit = Options.getInt(options, "quadratic-limit", 100000, 0);
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.err.println("Usage: java -cp out bench.SortBenchmark [--data dir] [--sizes 10000,100000] [--fields ...]"
+				+ " [--algorithms ...] [--distributions ...] [--warmup 3] [--iterations 5] [--quadratic-limit 100000] [--json file]"
+				+ " [--in-process]");
+			return;
+		}
+
+		String dataDir = options.getOrDefault("data", "bench-data");
+		String[] fields = list(options.get("fields"), ATTRIBUTES);
+		String[] algorithms = list(options.get("algorithms"), ALGORITHMS);
+		String[] distributions = list(options.get("distributions"), DISTRIBUTIONS);
+
+		SortBenchmark benchmark = new SortBenchmark();
+		boolean forked = options.containsKey("results");
+
+		if (!forked)
+			System.out.printf("%-10s %-20s %-12s %-15s %12s %12s %14s%n",
+				"rows", "field", "distribution", "algorithm", "median ms", "stddev ms", "rows/s");
+
+		if (!forked && !options.containsKey("in-process")) {
+			// A fresh JVM per algorithm, so none runs on code the JIT profiled for another
+			for (String algorithm : algorithms)
+				benchmark.fork(options, algorithm);
+		} else {
+			for (int size : sizes) {
+				File file = new File(dataDir, DataGenerator.fileName(size));
+				if (!file.exists()) {
+					System.out.println("Missing " + file + ", generate it with bench.DataGenerator " + dataDir + " " + size);
+					continue;
+				}
+
+				WeatherRecord[] records = new Reader(file.getPath()).readWeatherRecord().toArray(new WeatherRecord[0]);
+
+				for (String field : fields) {
+					for (String distribution : distributions) {
+						WeatherRecord[] input = benchmark.arrange(records, field, distribution);
+
+						for (String algorithm : algorithms) {
+							if ("selection".equals(algorithm) && size > quadraticLimit)
+								continue;
+							benchmark.measure(input, field, distribution, algorithm, warmup, iterations);
+						}
+					}
+				}
+			}
+		}
+
+		if (forked)
+			benchmark.writeResults(new File(options.get("results")));
+		else if (options.containsKey("json"))
+			benchmark.writeJson(new File(options.get("json")));
+	}
+
+	/*
+	 * Runs the benchmark of one algorithm in a child JVM with the same options and JVM
+	 * arguments, and adds its results to these
+	 */
+	void fork(Map<String, String> options, String algorithm) throws IOException {
+		List<String> command = new ArrayList<>();
+		command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+		command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(SortBenchmark.class.getName());
+		for (Map.Entry<String, String> option : options.entrySet()) {
+			if (!PARENT_OPTIONS.contains(option.getKey())) {
+				command.add("--" + option.getKey());
+				command.add(option.getValue());
+			}
+		}
+
+		File resultFile = File.createTempFile("sort-benchmark", ".results");
+		try {
+			command.add("--algorithms");
+			command.add(algorithm);
+			command.add("--results");
+			command.add(resultFile.getPath());
+
+			int exitCode = new ProcessBuilder(command).inheritIO().start().waitFor();
+			if (exitCode != 0) {
+				System.err.println("Benchmark of " + algorithm + " exited with code " + exitCode);
+				return;
+			}
+			results.addAll(Files.readAllLines(resultFile.toPath()));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while benchmarking " + algorithm);
+		} finally {
+			resultFile.delete();
+		}
+	}
+
+	/*
+	 * Orders a copy of the records according to the requested distribution of the sort key
+	 */
+	WeatherRecord[] arrange(WeatherRecord[] records, String attribute, String distribution) {
+		Comparator<WeatherRecord> comparator = recordSorter.getComparatorForAttribute(attribute);
+		Random random = new Random(records.length);
+		WeatherRecord[] input = records.clone();
+
+		switch (distribution) {
+			case "random":
+				shuffle(input, random);
+				break;
+			case "sorted":
+				Arrays.sort(input, comparator);
+				break;
+			case "reversed":
+				Arrays.sort(input, comparator.reversed());
+				break;
+			case "few-unique":
+				WeatherRecord[] picks = new WeatherRecord[FEW_UNIQUE_VALUES];
+				for (int i = 0; i < picks.length; ++i)
+					picks[i] = records[random.nextInt(records.length)];
+				for (int i = 0; i < input.length; ++i)
+					input[i] = picks[random.nextInt(picks.length)];
+				break;
+			case "sawtooth":
+				shuffle(input, random);
+				int tooth = Math.max(1, input.length / SAWTOOTH_TEETH);
+				for (int lo = 0; lo < input.length; lo += tooth)
+					Arrays.sort(input, lo, Math.min(lo + tooth, input.length), comparator);
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown distribution: " + distribution);
+		}
+
+		return input;
+	}
+
+	void measure(WeatherRecord[] input, String attribute, String distribution, String algorithm, int warmup, int iterations) {
+		Comparator<WeatherRecord> comparator = recordSorter.getComparatorForAttribute(attribute);
+		Measurement measurement;
+		boolean sorted;
+
+		if ("radix".equals(algorithm)) {
+			measurement = Measurement.run(() -> new ArrayList<>(Arrays.asList(input)), list -> {
+				recordSorter.sortWeatherRecords(list, attribute, "radix");
+				return list.isEmpty() ? null : list.get(list.size() / 2);
+			}, warmup, iterations);
+
+			ArrayList<WeatherRecord> check = new ArrayList<>(Arrays.asList(input));
+			recordSorter.sortWeatherRecords(check, attribute, "radix");
+			sorted = isSorted(check.toArray(new WeatherRecord[0]), comparator);
+		} else {
+			measurement = Measurement.run(input::clone, copy -> {
+				sort(copy, comparator, algorithm);
+				return Measurement.middle(copy);
+			}, warmup, iterations);
+
+			WeatherRecord[] check = input.clone();
+			sort(check, comparator, algorithm);
+			sorted = isSorted(check, comparator);
+		}
+
+		double rowsPerSecond = input.length / (measurement.medianNanos() / 1e9);
+		System.out.printf("%-10d %-20s %-12s %-15s %12.3f %12.3f %14.0f%s%n",
+			input.length, attribute, distribution, algorithm,
+			measurement.medianNanos() / 1e6, measurement.stdDevNanos() / 1e6, rowsPerSecond,
+			sorted ? "" : "  NOT SORTED");
+
+		results.add(String.format(Locale.ROOT,
+			"{\"rows\": %d, \"field\": \"%s\", \"distribution\": \"%s\", \"algorithm\": \"%s\", \"iterations\": %d, " +
+			"\"medianNs\": %d, \"meanNs\": %.1f, \"minNs\": %d, \"maxNs\": %d, \"stdDevNs\": %.1f, \"rowsPerSecond\": %.1f, \"sorted\": %b}",
+			input.length, attribute, distribution, algorithm, measurement.iterations(),
+			measurement.medianNanos(), measurement.meanNanos(), measurement.minNanos(), measurement.maxNanos(),
+			measurement.stdDevNanos(), rowsPerSecond, sorted));
+	}
+
+	private void sort(WeatherRecord[] records, Comparator<WeatherRecord> comparator, String algorithm) {
+		recordSorter.sortRecords(records, comparator, algorithm);
+	}
+
+	/*
+	 * Writes the results one per line, for the parent of a forked run
+	 */
+	void writeResults(File file) throws IOException {
+		Files.write(file.toPath(), results);
+	}
+
+	void writeJson(File file) throws IOException {
+		try (PrintWriter out = new PrintWriter(new FileWriter(file))) {
+			out.println("[");
+			for (int i = 0; i < results.size(); ++i)
+				out.println("  " + results.get(i) + (i + 1 < results.size() ? "," : ""));
+			out.println("]");
+		}
+		System.out.println("Wrote " + results.size() + " results to " + file);
+	}
+
+	/*
+	 * Private helper methods
+	 */
+	private static boolean isSorted(WeatherRecord[] records, Comparator<WeatherRecord> comparator) {
+		for (int i = 1; i < records.length; ++i)
+			if (comparator.compare(records[i - 1], records[i]) > 0) return false;
+		return true;
+	}
+
+	private static void shuffle(WeatherRecord[] a, Random random) {
+		for (int i = a.length - 1; i > 0; --i) {
+			int j = random.nextInt(i + 1);
+			WeatherRecord temp = a[i];
+			a[i] = a[j];
+			a[j] = temp;
+		}
+	}
+
+	private static String[] list(String value, String[] defaults) {
+		return value == null ? defaults : value.split(",");
+	}
+}
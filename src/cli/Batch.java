@@ -0,0 +1,487 @@
+package cli;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import algorithm.ExternalSorter;
+import algorithm.KllSketch;
+import algorithm.Quantiles;
+import algorithm.Query;
+import algorithm.QueryIndex;
+import algorithm.SortSpec;
+import algorithm.SortedIndexCache;
+import algorithm.WeatherRecordSorter;
+import csv.Exporter;
+import csv.LazyColumnFile;
+import csv.LoadReport;
+import csv.Reader;
+import csv.WeatherColumnStore;
+import csv.WeatherColumns;
+import csv.WeatherRecord;
+import csv.WeatherRecord.WeatherField;
+
+/**
+ * Headless entry point: load a weather CSV, sort it and optionally write the result.
+ *
+ * Only the csv and algorithm packages are touched, so no AWT or JFreeChart
+ * classes are loaded and the program runs on servers without a display.
+ *
+ * Usage: java -cp out Main --input file.csv --sort precipType,temperature:desc
+ *        [--algorithm merge] [--order asc|desc] [--output sorted.csv] [--repeat 5]
+ *        [--format csv|binary] [--parallelism 8] [--cutoff 8192] [--metrics]
+ *        [--external --memory <MB> --run-size <rows> --fan-in <runs> --temp-dir <dir>]
+ *        [--lazy [--quantiles 0.5,p95]] [--error-budget 0.01] [--top 100]
+ *    or: java -cp out Main --input file.csv --quantiles 0.5,p95,p99
+ *        [--fields temperature,windSpeed] [--approximate [--k 200]] [--lazy]
+ *    or: java -cp out Main --input file.csv --where "temperature between -5 and 0 and pressure < 1000"
+ *        [--output matches.csv] [--repeat 5] [--lazy]
+ *
+ * Sort fields are compared in order, each ascending unless followed by :desc;
+ * --order desc flips every one. With --algorithm radix the fields are ranked
+ * and packed into long keys, so no comparator runs.
+ *
+ * --top k keeps only the first k rows of the order without sorting the rest,
+ * with --algorithm heap (the default), parallel heap or quickselect.
+ *
+ * With --lazy only the sorted columns are parsed and --output copies the
+ * original lines in sorted order. --error-budget is the largest fraction of
+ * malformed lines a load accepts; past it nothing is sorted.
+ *
+ * --quantiles prints the given quantiles of every numeric field, or of
+ * --fields, instead of sorting. They are exact, found by selection on the
+ * loaded columns; with --approximate the file is streamed once through a
+ * KLL sketch per field, so any size fits in memory. With --sort and --lazy
+ * they are printed after the sort, and the first sort field's quantiles are
+ * read straight off the sorted rows.
+ *
+ * --where prints how many rows match a query (see algorithm.Query) and
+ * writes them, in file order, to --output. Conditions are answered by binary
+ * search on per-field sorted indexes, which the first run builds.
+ */
+public class Batch {
+	public static void main(String[] args) {
+		Map<String, String> options;
+		int repeat, top, loadThreads;
+		double errorBudget;
+		try {
+			options = Options.parse(args);
+			repeat = Options.getInt(options, "repeat", 1, 1);
+			top = Options.getInt(options, "top", 0, 0);
+			loadThreads = Options.getInt(options, "parallelism", Runtime.getRuntime().availableProcessors(), 1);
+			errorBudget = Options.getDouble(options, "error-budget", 1.0, 0.0, 1.0);
+			Options.getInt(options, "cutoff", 0, 1);
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			usage();
+			return;
+		}
+
+		if (options.containsKey("help")
+				|| !options.containsKey("sort") && !options.containsKey("quantiles") && !options.containsKey("where")) {
+			usage();
+			return;
+		}
+
+		String input = options.getOrDefault("input", "res/csv/weatherHistory.csv");
+		if (options.containsKey("quantiles") && options.containsKey("sort") && !options.containsKey("lazy")) {
+			System.err.println("--quantiles with --sort needs --lazy");
+			usage();
+			return;
+		}
+		if (options.containsKey("quantiles") && !options.containsKey("sort")) {
+			quantiles(options, input, loadThreads, errorBudget);
+			return;
+		}
+		if (options.containsKey("where")) {
+			query(options, input, repeat, loadThreads, errorBudget);
+			return;
+		}
+
+		String algorithm = options.getOrDefault("algorithm", top > 0 ? "heap" : "sort");
+		boolean descending = options.getOrDefault("order", "asc").toLowerCase().startsWith("desc");
+		SortSpec spec;
+		try {
+			spec = SortSpec.parse(options.get("sort"));
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			return;
+		}
+		if (descending)
+			spec = spec.reversed();
+
+		WeatherRecordSorter recordSorter = new WeatherRecordSorter();
+		if (options.containsKey("parallelism"))
+			recordSorter.setParallelism(loadThreads);
+		if (options.containsKey("cutoff"))
+			recordSorter.setParallelCutoff(Options.getInt(options, "cutoff", 0, 1));
+		recordSorter.setMetricsEnabled(options.containsKey("metrics"));
+
+		Comparator<WeatherRecord> comparator = spec.comparator();
+
+		if (options.containsKey("external")) {
+			externalSort(options, input, comparator, algorithm, recordSorter);
+			return;
+		}
+
+		if (options.containsKey("lazy")) {
+			lazySort(options, input, spec, algorithm, repeat, top, recordSorter);
+			return;
+		}
+
+		long loadStart = System.nanoTime();
+		Reader reader = new Reader(input);
+		reader.setErrorBudget(errorBudget);
+		ArrayList<WeatherRecord> records;
+		try {
+			records = reader.readWeatherRecord(loadThreads);
+		} catch (IOException e) {
+			System.err.println("Could not read " + input + ": " + e.getMessage());
+			return;
+		}
+		long loadNanos = System.nanoTime() - loadStart;
+		LoadReport report = reader.getLastReport();
+		if (report.getRejected() > 0)
+			System.out.println(report);
+		if (report.isOverBudget())
+			return;
+		System.out.printf("Loaded %d rows from %s in %.1f ms%n", records.size(), input, loadNanos / 1e6);
+
+		long[] times = new long[repeat];
+		WeatherRecord[] sorted = null;
+
+		for (int run = 0; run < repeat; ++run) {
+			WeatherRecord[] copy = records.toArray(new WeatherRecord[0]);
+			long start = System.nanoTime();
+			if (top > 0) {
+				copy = recordSorter.topRecords(copy, comparator, top, algorithm);
+			} else {
+				recordSorter.sortRecords(copy, spec, algorithm);
+			}
+			times[run] = System.nanoTime() - start;
+			sorted = copy;
+
+			System.out.printf("Run %d: %.3f ms, %.0f rows/s%s%n", run + 1, times[run] / 1e6,
+				records.size() / (times[run] / 1e9),
+				recordSorter.getLastStats() != null ? " (" + recordSorter.getLastStats() + ")" : "");
+		}
+
+		long[] ordered = times.clone();
+		Arrays.sort(ordered);
+		System.out.printf("%s%s on %s: min %.3f ms, median %.3f ms, %.0f rows/s%n",
+			algorithm, top > 0 ? " top " + top : "", spec, ordered[0] / 1e6, ordered[repeat / 2] / 1e6, records.size() / (ordered[repeat / 2] / 1e9));
+
+		if (options.containsKey("output") && sorted != null) {
+			long writeStart = System.nanoTime();
+			try {
+				Exporter exporter = new Exporter();
+				exporter.setParallelism(loadThreads);
+				if ("binary".equalsIgnoreCase(options.get("format")))
+					exporter.writeSnapshot(Arrays.asList(sorted), new File(options.get("output")));
+				else
+					exporter.writeCsv(sorted, new File(options.get("output")));
+			} catch (IOException e) {
+				System.err.println("Could not write " + options.get("output") + ": " + e.getMessage());
+				return;
+			}
+			System.out.printf("Wrote %s in %.1f ms%n", options.get("output"), (System.nanoTime() - writeStart) / 1e6);
+		}
+	}
+
+	/*
+	 * Sorts a file larger than the heap through ExternalSorter; --output is required
+	 */
+	private static void externalSort(Map<String, String> options, String input, Comparator<WeatherRecord> comparator,
+									 String algorithm, WeatherRecordSorter recordSorter) {
+		if (!options.containsKey("output")) {
+			System.err.println("--external needs --output");
+			return;
+		}
+
+		ExternalSorter externalSorter = new ExternalSorter(recordSorter);
+		externalSorter.setAlgorithm(algorithm);
+		try {
+			if (options.containsKey("memory"))
+				externalSorter.setMemoryBudget(Options.getLong(options, "memory", 0, 1) << 20);
+			if (options.containsKey("run-size"))
+				externalSorter.setRunSize(Options.getInt(options, "run-size", 0, 1));
+			if (options.containsKey("fan-in"))
+				externalSorter.setFanIn(Options.getInt(options, "fan-in", 0, 2));
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			usage();
+			return;
+		}
+		if (options.containsKey("temp-dir"))
+			externalSorter.setTempDir(new File(options.get("temp-dir")));
+
+		try {
+			long start = System.nanoTime();
+			ExternalSorter.Report report = externalSorter.sort(new File(input), new File(options.get("output")), comparator);
+			long elapsed = System.nanoTime() - start;
+
+			System.out.println("External sort of " + input + " into " + options.get("output"));
+			System.out.println(report);
+			System.out.printf("Total %.1f ms, %.0f rows/s%n", elapsed / 1e6, report.getRows() / (elapsed / 1e9));
+		} catch (IOException e) {
+			System.err.println("External sort failed: " + e.getMessage());
+		}
+	}
+
+	/*
+	 * Sorts a LazyColumnFile, parsing only the sort fields
+	 */
+	private static void lazySort(Map<String, String> options, String input, SortSpec spec, String algorithm,
+								 int repeat, int top, WeatherRecordSorter recordSorter) {
+		// One ascending field can use the chosen method; anything else sorts packed ranks
+		SortSpec.Key single = spec.getKeys().size() == 1 && !spec.getKeys().get(0).isDescending() ? spec.getKeys().get(0) : null;
+
+		long loadStart = System.nanoTime();
+		LazyColumnFile columns;
+		try {
+			columns = new Reader(input).readLazy();
+		} catch (IOException e) {
+			System.err.println("Could not read " + input + ": " + e.getMessage());
+			return;
+		}
+		System.out.printf("Indexed %d rows from %s in %.1f ms%n", columns.size(), input, (System.nanoTime() - loadStart) / 1e6);
+
+		long[] times = new long[repeat];
+		int[] order = null;
+
+		for (int run = 0; run < repeat; ++run) {
+			long start = System.nanoTime();
+			if (top > 0)
+				order = recordSorter.topPermutation(columns, spec, top);
+			else
+				order = single != null ? recordSorter.sortPermutation(columns, single.getField(), algorithm)
+					: recordSorter.sortPermutation(columns, spec);
+			times[run] = System.nanoTime() - start;
+			System.out.printf("Run %d: %.3f ms, %.0f rows/s%n", run + 1, times[run] / 1e6, columns.size() / (times[run] / 1e9));
+		}
+
+		long[] ordered = times.clone();
+		Arrays.sort(ordered);
+		System.out.printf("%s%s on %s (lazy): min %.3f ms, median %.3f ms, %.0f rows/s%n",
+			top > 0 ? "heap" : algorithm, top > 0 ? " top " + top : "", spec, ordered[0] / 1e6, ordered[repeat / 2] / 1e6, columns.size() / (ordered[repeat / 2] / 1e9));
+
+		if (options.containsKey("quantiles")) {
+			// The sorted rows answer the quantiles of the first sort field; other fields use selection
+			SortedIndexCache cache = new SortedIndexCache();
+			if (top == 0)
+				cache.put(spec, algorithm, order);
+			try {
+				double[] probabilities = Quantiles.parse(options.get("quantiles"));
+				List<WeatherField> fields = quantileFields(options);
+				long start = System.nanoTime();
+				double[][] values = new double[fields.size()][];
+				for (int f = 0; f < values.length; ++f)
+					values[f] = Quantiles.exact(columns, fields.get(f), cache, probabilities);
+				printQuantiles(fields, probabilities, values);
+				System.out.printf("Exact quantiles of %d rows in %.1f ms (%s)%n", columns.size(), (System.nanoTime() - start) / 1e6, cache);
+			} catch (IllegalArgumentException e) {
+				System.err.println(e.getMessage());
+				return;
+			}
+		}
+
+		if (options.containsKey("output") && order != null) {
+			long writeStart = System.nanoTime();
+			try (BufferedWriter out = new BufferedWriter(new FileWriter(options.get("output")), 1 << 16)) {
+				out.write(Reader.CSV_HEADER);
+				out.newLine();
+				for (int i = 0; i < order.length; ++i) {
+					out.write(columns.getLine(order[i]));
+					out.newLine();
+				}
+			} catch (IOException e) {
+				System.err.println("Could not write " + options.get("output") + ": " + e.getMessage());
+				return;
+			}
+			System.out.printf("Wrote %s in %.1f ms%n", options.get("output"), (System.nanoTime() - writeStart) / 1e6);
+		}
+	}
+
+	/*
+	 * Prints quantiles of the numeric fields, exact from the loaded columns or approximate from one streaming pass
+	 */
+	private static void quantiles(Map<String, String> options, String input, int loadThreads, double errorBudget) {
+		double[] probabilities;
+		List<WeatherField> fields;
+		int k;
+		try {
+			probabilities = Quantiles.parse(options.get("quantiles"));
+			fields = quantileFields(options);
+			k = Options.getInt(options, "k", KllSketch.DEFAULT_K, 2);
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			return;
+		}
+
+		Reader reader = new Reader(input);
+		reader.setErrorBudget(errorBudget);
+
+		long start = System.nanoTime();
+		double[][] values = new double[fields.size()][];
+		long rows;
+		try {
+			if (options.containsKey("approximate")) {
+				KllSketch[] sketches = new KllSketch[fields.size()];
+				for (int f = 0; f < sketches.length; ++f)
+					sketches[f] = new KllSketch(k);
+
+				reader.forEach(new File(input), record -> {
+					for (int f = 0; f < sketches.length; ++f)
+						sketches[f].update(record.getDouble(fields.get(f)));
+				});
+				for (int f = 0; f < sketches.length; ++f)
+					values[f] = sketches[f].quantiles(probabilities);
+				rows = reader.getLastReport().getRows();
+			} else {
+				WeatherColumns columns = options.containsKey("lazy") ? reader.readLazy()
+					: reader.readColumns(new File(input), loadThreads);
+				for (int f = 0; f < values.length; ++f)
+					values[f] = Quantiles.exact(columns, fields.get(f), probabilities);
+				rows = columns.size();
+			}
+		} catch (IOException e) {
+			System.err.println("Could not read " + input + ": " + e.getMessage());
+			return;
+		}
+
+		LoadReport report = reader.getLastReport();
+		if (report != null && report.getRejected() > 0)
+			System.out.println(report);
+		if (report != null && report.isOverBudget())
+			return;
+
+		printQuantiles(fields, probabilities, values);
+		System.out.printf("%s quantiles of %d rows in %.1f ms%n", options.containsKey("approximate") ? "Approximate" : "Exact",
+			rows, (System.nanoTime() - start) / 1e6);
+	}
+
+	/*
+	 * The fields named by --fields, or every numeric field; throws IllegalArgumentException on a text or unknown field
+	 */
+	private static List<WeatherField> quantileFields(Map<String, String> options) {
+		List<WeatherField> fields = new ArrayList<>();
+		if (options.containsKey("fields")) {
+			for (String name : options.get("fields").split(",")) {
+				WeatherField field = SortSpec.field(name.trim());
+				if (field == null || !WeatherColumnStore.isNumeric(field))
+					throw new IllegalArgumentException("Not a numeric field: " + name.trim());
+				fields.add(field);
+			}
+		} else {
+			for (WeatherField field : WeatherField.values()) {
+				if (WeatherColumnStore.isNumeric(field))
+					fields.add(field);
+			}
+		}
+		return fields;
+	}
+
+	private static void printQuantiles(List<WeatherField> fields, double[] probabilities, double[][] values) {
+		StringBuilder header = new StringBuilder(String.format("%-22s", "field"));
+		for (double p : probabilities)
+			header.append(String.format(" %12s", "p" + (float) (100 * p)));
+		System.out.println(header);
+		for (int f = 0; f < values.length; ++f) {
+			StringBuilder line = new StringBuilder(String.format("%-22s", fields.get(f)));
+			for (double value : values[f])
+				line.append(String.format(" %12.4f", value));
+			System.out.println(line);
+		}
+	}
+
+	/*
+	 * Counts, and optionally writes, the rows matching --where
+	 */
+	private static void query(Map<String, String> options, String input, int repeat, int loadThreads, double errorBudget) {
+		Query query;
+		try {
+			query = Query.parse(options.get("where"));
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			return;
+		}
+
+		Reader reader = new Reader(input);
+		reader.setErrorBudget(errorBudget);
+
+		long loadStart = System.nanoTime();
+		WeatherColumns columns;
+		try {
+			columns = options.containsKey("lazy") ? reader.readLazy() : reader.readColumns(new File(input), loadThreads);
+		} catch (IOException e) {
+			System.err.println("Could not read " + input + ": " + e.getMessage());
+			return;
+		}
+		LoadReport report = reader.getLastReport();
+		if (report != null && report.getRejected() > 0)
+			System.out.println(report);
+		if (report != null && report.isOverBudget())
+			return;
+		System.out.printf("Loaded %d rows from %s in %.1f ms%n", columns.size(), input, (System.nanoTime() - loadStart) / 1e6);
+
+		QueryIndex index = new QueryIndex(columns);
+		BitSet matches = null;
+		for (int run = 0; run < repeat; ++run) {
+			long start = System.nanoTime();
+			try {
+				matches = index.select(query);
+			} catch (IllegalArgumentException e) {
+				System.err.println(e.getMessage());
+				return;
+			}
+			System.out.printf("Run %d: %.3f ms%s%n", run + 1, (System.nanoTime() - start) / 1e6, run == 0 ? " (building indexes)" : "");
+		}
+		System.out.printf("%d of %d rows match %s%n", matches.cardinality(), columns.size(), query);
+
+		if (options.containsKey("output")) {
+			long writeStart = System.nanoTime();
+			try {
+				if (columns instanceof LazyColumnFile) {
+					LazyColumnFile lazy = (LazyColumnFile) columns;
+					try (BufferedWriter out = new BufferedWriter(new FileWriter(options.get("output")), 1 << 16)) {
+						out.write(Reader.CSV_HEADER);
+						out.newLine();
+						for (int row = matches.nextSetBit(0); row >= 0; row = matches.nextSetBit(row + 1)) {
+							out.write(lazy.getLine(row));
+							out.newLine();
+						}
+					}
+				} else {
+					WeatherRecord[] rows = matches.stream().mapToObj(columns::getRecord).toArray(WeatherRecord[]::new);
+					new Exporter().writeCsv(rows, new File(options.get("output")));
+				}
+			} catch (IOException e) {
+				System.err.println("Could not write " + options.get("output") + ": " + e.getMessage());
+				return;
+			}
+			System.out.printf("Wrote %s in %.1f ms%n", options.get("output"), (System.nanoTime() - writeStart) / 1e6);
+		}
+	}
+
+	private static void usage() {
+		System.out.println("Usage: java -cp out Main --input <file.csv> --sort <field>[:asc|desc][,<field>[:asc|desc]...]");
+		System.out.println("       [--algorithm quick|merge|shell|selection|radix|parallel quick|parallel merge|sort|parallel sort");
+		System.out.println("                    |heap|parallel heap|quickselect (with --top)]");
+		System.out.println("       [--order asc|desc] [--output <file.csv>] [--format csv|binary] [--repeat <n>]");
+		System.out.println("       [--parallelism <threads>] [--cutoff <rows>] [--metrics]");
+		System.out.println("       [--external --memory <MB> --run-size <rows> --fan-in <runs> --temp-dir <dir>]");
+		System.out.println("       [--lazy [--quantiles <p>[,<p>...] [--fields <field>[,<field>...]]]] [--error-budget <fraction>] [--top <k>]");
+		System.out.println("   or: java -cp out Main --input <file.csv> --quantiles <p>[,<p>...] [--fields <field>[,<field>...]]");
+		System.out.println("       [--approximate [--k <size>]] [--lazy] [--error-budget <fraction>]");
+		System.out.println("   or: java -cp out Main --input <file.csv> --where \"<field> <op> <value> [and ...]\"");
+		System.out.println("       (op: = < <= > >= between <low> and <high> | starts <prefix>)");
+		System.out.println("       [--output <file.csv>] [--repeat <n>] [--lazy] [--error-budget <fraction>]");
+	}
+}
@@ -0,0 +1,115 @@
+package cli;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Command-line options of the form --name value, shared by Batch and the
+ * benchmarks.
+ *
+ * An option followed by another option, or by nothing, is a flag and maps to
+ * "true". Malformed input throws IllegalArgumentException so each entry point
+ * can print its own usage.
+ */
+public class Options {
+	private Options() {}
+
+	/**
+	 * Maps each option name, without the leading "--", to its value.
+	 */
+	public static Map<String, String> parse(String[] args) {
+		Map<String, String> options = new HashMap<>();
+		for (int i = 0; i < args.length; ++i) {
+			if (!args[i].startsWith("--"))
+				throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+
+			String key = args[i].substring(2);
+			if (i + 1 < args.length && !args[i + 1].startsWith("--"))
+				options.put(key, args[++i]);
+			else
+				options.put(key, "true");
+		}
+		return options;
+	}
+
+	/**
+	 * The integer value of an option, or fallback when it is absent. Throws
+	 * IllegalArgumentException when the value is not an integer or is below min.
+	 */
+	public static int getInt(Map<String, String> options, String name, int fallback, int min) {
+		if (!options.containsKey(name))
+			return fallback;
+
+		int value;
+		try {
+			value = Integer.parseInt(options.get(name));
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("--" + name + " needs an integer: " + options.get(name));
+		}
+		if (value < min)
+			throw new IllegalArgumentException("--" + name + " must be at least " + min + ": " + value);
+		return value;
+	}
+
+	/**
+	 * The long value of an option, or fallback when it is absent. Throws
+	 * IllegalArgumentException when the value is not an integer or is below min.
+	 */
+	public static long getLong(Map<String, String> options, String name, long fallback, long min) {
+		if (!options.containsKey(name))
+			return fallback;
+
+		long value;
+		try {
+			value = Long.parseLong(options.get(name));
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("--" + name + " needs an integer: " + options.get(name));
+		}
+		if (value < min)
+			throw new IllegalArgumentException("--" + name + " must be at least " + min + ": " + value);
+		return value;
+	}
+
+	/**
+	 * The numeric value of an option, or fallback when it is absent. Throws
+	 * IllegalArgumentException when the value is not a number or lies outside
+	 * [min, max].
+	 */
+	public static double getDouble(Map<String, String> options, String name, double fallback, double min, double max) {
+		if (!options.containsKey(name))
+			return fallback;
+
+		double value;
+		try {
+			value = Double.parseDouble(options.get(name));
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("--" + name + " needs a number: " + options.get(name));
+		}
+		if (!(value >= min && value <= max))
+			throw new IllegalArgumentException("--" + name + " must be between " + min + " and " + max + ": " + value);
+		return value;
+	}
+
+	/**
+	 * The comma-separated integers of an option, or fallback when it is absent.
+	 * Throws IllegalArgumentException when any value is not an integer or is
+	 * below min.
+	 */
+	public static int[] getInts(Map<String, String> options, String name, int[] fallback, int min) {
+		if (!options.containsKey(name))
+			return fallback;
+
+		String[] parts = options.get(name).split(",");
+		int[] values = new int[parts.length];
+		for (int i = 0; i < parts.length; ++i) {
+			try {
+				values[i] = Integer.parseInt(parts[i].trim());
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("--" + name + " needs integers: " + options.get(name));
+			}
+			if (values[i] < min)
+				throw new IllegalArgumentException("--" + name + " must be at least " + min + ": " + values[i]);
+		}
+		return values;
+	}
+}
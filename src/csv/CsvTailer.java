@@ -0,0 +1,215 @@
+package csv;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Follows a weather CSV that is being appended to and parses only the new lines.
+ *
+ * The tailer remembers the offset just past the last complete line it has
+ * read. Each poll parses the complete lines written since then; a trailing
+ * line without its newline is left for the next poll, so a row is never seen
+ * half written. After start(), a background thread polls whenever the
+ * WatchService reports a change to the file, and at least once per
+ * POLL_INTERVAL_MS in case the platform drops or delays events, and hands
+ * every non-empty batch to the listener on that thread.
+ *
+ * A file that becomes shorter than the offset was replaced or truncated and
+ * is read again from its first data line, as is one that was moved away and
+ * created again; the listener is told with reset() before those rows, which
+ * replace every row it had. Following stops on any other I/O error, which
+ * goes to the listener's failed().
+ */
+public class CsvTailer implements Closeable {
+	public static final long POLL_INTERVAL_MS = 1000;
+
+	private final File file;
+	private final Listener listener;
+	private final LineParser parser = new LineParser();
+	private long position;
+	private boolean missing;	// The last poll found no file, so the next one starts over
+	private boolean reset;
+	private WatchService watcher;
+	private Thread thread;
+
+	/**
+	 * Follows file from the end of its last complete line, so only rows
+	 * appended from now on are reported.
+	 */
+	/**
+	 * Receives what the watch thread reads, on that thread.
+	 */
+	public interface Listener {
+		/**
+		 * Rows read since the last batch, in file order.
+		 */
+		void rowsAppended(List<WeatherRecord> records);
+
+		/**
+		 * The file was truncated or replaced. Rows reported so far are gone and
+		 * the batches that follow start again from its first data line.
+		 */
+		default void reset() {}
+
+		/**
+		 * Following stopped on an I/O error.
+		 */
+		default void failed(IOException e) {}
+	}
+
+	public CsvTailer(File file, Listener listener) throws IOException {
+		this(file, completeLength(file), listener);
+	}
+
+	/**
+	 * Follows file from position, which must be a line start; 0 reads the
+	 * whole file, skipping its header.
+	 */
+	public CsvTailer(File file, long position, Listener listener) {
+		this.file = file;
+		this.position = position;
+		this.listener = listener;
+	}
+
+	/**
+	 * Length of file up to and including its last newline: the position to
+	 * follow from after loading it.
+	 */
+	public static long completeLength(File file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			return MappedLines.lastLineEnd(channel, 0, channel.size());
+		}
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Offset just past the last line read.
+	 */
+	public synchronized long getPosition() {
+		return position;
+	}
+
+	/**
+	 * Lines read and rejected so far.
+	 */
+	public synchronized LoadReport getReport() {
+		return parser.getReport();
+	}
+
+	/**
+	 * Whether the last poll found the file truncated or replaced, so its rows
+	 * start again from the first data line instead of following earlier ones.
+	 */
+	public synchronized boolean wasReset() {
+		return reset;
+	}
+
+	/**
+	 * Parses the complete lines appended since the last poll; empty when there are none.
+	 */
+	public synchronized List<WeatherRecord> poll() throws IOException {
+		List<WeatherRecord> records = new ArrayList<>();
+
+		reset = false;
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size < position || missing) {
+				position = 0;
+				reset = true;
+				missing = false;
+			}
+			if (position == 0)
+				position = MappedLines.firstLineEnd(channel);
+
+			long end = MappedLines.lastLineEnd(channel, position, size);
+			if (end == position)
+				return records;
+
+			MappedLines.forEach(channel, position, end, (buffer, start, lineEnd) -> {
+				WeatherRecord record = parser.parse(buffer, start, lineEnd);
+				if (record != null)
+					records.add(record);
+			});
+			position = end;
+		} catch (NoSuchFileException e) {
+			// Moved away, wait for the new file
+			missing = true;
+		}
+		return records;
+	}
+
+	/**
+	 * Starts watching the file on a daemon thread. Does nothing if already started.
+	 */
+	public synchronized void start() throws IOException {
+		if (thread != null)
+			return;
+
+		Path path = file.getAbsoluteFile().toPath();
+		watcher = FileSystems.getDefault().newWatchService();
+		path.getParent().register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+
+		WatchService service = watcher;
+		thread = new Thread(() -> follow(service, path.getFileName()), "csv-tailer " + file.getName());
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Stops watching. A batch already read may still reach the listener.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (watcher != null) {
+			watcher.close();
+			watcher = null;
+		}
+		thread = null;
+	}
+
+	/*
+	 * Watch loop: polls on every change to name and on every timeout until the service is closed
+	 */
+	private void follow(WatchService service, Path name) {
+		try {
+			while (true) {
+				WatchKey key = service.poll(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+				if (key != null) {
+					boolean changed = false;
+					for (WatchEvent<?> event : key.pollEvents())
+						changed |= event.kind() == StandardWatchEventKinds.OVERFLOW || name.equals(event.context());
+					key.reset();
+					if (!changed)
+						continue;
+				}
+
+				List<WeatherRecord> records = poll();
+				if (wasReset())
+					listener.reset();
+				if (!records.isEmpty())
+					listener.rowsAppended(records);
+			}
+		} catch (ClosedWatchServiceException | InterruptedException e) {
+			// Closed: stop following
+		} catch (IOException e) {
+			listener.failed(e);
+		}
+	}
+}
@@ -0,0 +1,438 @@
+package csv;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import csv.WeatherRecord.WeatherField;
+
+/**
+ * Writes weather data back to disk, as CSV in the layout of weatherHistory.csv
+ * or as a binary snapshot (see SnapshotFile) that Reader.readSnapshot loads.
+ *
+ * Rows are formatted straight into byte blocks of about a megabyte and
+ * handed to a FileChannel; numbers are written as their shortest decimal
+ * that reads back as the same double, computed in integer arithmetic. With a
+ * parallelism above one the blocks are formatted on worker threads and
+ * written in order. Output goes to a temporary file in the target directory
+ * that replaces the target only once it is complete.
+ */
+public class Exporter {
+	private static final WeatherField[] FIELDS = WeatherField.values();
+	private static final byte[] HEADER = (Reader.CSV_HEADER + "\n").getBytes(StandardCharsets.UTF_8);
+
+	private static final int BLOCK_ROWS = 1 << 12;
+	private static final int BLOCK_BYTES = 1 << 20;
+
+	// Range in which Double.toString prints plain decimals; putDouble formats it itself
+	private static final double PLAIN_MIN = 1e-3, PLAIN_MAX = 1e7;
+	private static final int SHORT_DECIMALS = 4;
+	private static final double SHORT_SCALE = 1e4;
+	private static final long[] POWERS_OF_FIVE = new long[22];
+	private static final byte[] DIGIT_PAIRS = new byte[200];	// "00" to "99"
+	static {
+		POWERS_OF_FIVE[0] = 1;
+		for (int i = 1; i < POWERS_OF_FIVE.length; ++i)
+			POWERS_OF_FIVE[i] = POWERS_OF_FIVE[i - 1] * 5;
+		for (int i = 0; i < 100; ++i) {
+			DIGIT_PAIRS[2 * i] = (byte) ('0' + i / 10);
+			DIGIT_PAIRS[2 * i + 1] = (byte) ('0' + i % 10);
+		}
+	}
+
+	private int parallelism = 1;
+
+	/**
+	 * Number of threads formatting CSV blocks; 1 formats on the calling thread.
+	 */
+	public void setParallelism(int parallelism) {
+		this.parallelism = Math.max(1, parallelism);
+	}
+
+	public void writeCsv(List<WeatherRecord> records, File target) throws IOException {
+		writeCsv(records.toArray(new WeatherRecord[0]), target);
+	}
+
+	public void writeCsv(WeatherRecord[] records, File target) throws IOException {
+		write(target, channel -> writeBlocks(channel, records.length, (block, row) -> block.record(records[row])));
+	}
+
+	/**
+	 * Writes the rows of columns in the given order, or in their own order when
+	 * order is null, for example a permutation from WeatherRecordSorter.sortPermutation.
+	 */
+	public void writeCsv(WeatherColumns columns, int[] order, File target) throws IOException {
+		int rows = order == null ? columns.size() : order.length;
+
+		double[][] numeric = new double[FIELDS.length][];
+		int[][] codes = new int[FIELDS.length][];
+		byte[][][] dictionaries = new byte[FIELDS.length][][];
+		for (WeatherField field : FIELDS) {
+			int f = field.ordinal();
+			if (WeatherColumnStore.isNumeric(field)) {
+				numeric[f] = columns.getColumn(field);
+				continue;
+			}
+			if (!WeatherColumnStore.isEncoded(field))
+				continue;	// dates are nearly unique, written row by row
+
+			// Every distinct value is encoded once
+			codes[f] = columns.getCodes(field);
+			dictionaries[f] = new byte[columns.getCardinality(field)][];
+			for (int code = 0; code < dictionaries[f].length; ++code)
+				dictionaries[f][code] = utf8(WeatherRecord.csvField(columns.decode(field, code)));
+		}
+
+		write(target, channel -> writeBlocks(channel, rows, (block, i) -> {
+			int row = order == null ? i : order[i];
+			for (int f = 0; f < FIELDS.length; ++f) {
+				if (f > 0)
+					block.put((byte) ',');
+				if (numeric[f] != null)
+					block.putDouble(numeric[f][row]);
+				else if (codes[f] != null)
+					block.put(dictionaries[f][codes[f][row]]);
+				else
+					block.putText(columns.getString(FIELDS[f], row));
+			}
+			block.put((byte) '\n');
+		}));
+	}
+
+	public void writeSnapshot(List<WeatherRecord> records, File target) throws IOException {
+		writeSnapshot(WeatherColumnStore.of(records), null, target);
+	}
+
+	/**
+	 * Writes the rows of columns, in the given order or their own when order is
+	 * null, as a snapshot that is not tied to any CSV.
+	 */
+	public void writeSnapshot(WeatherColumns columns, int[] order, File target) throws IOException {
+		SnapshotFile.write(columns, order, target, null);
+	}
+
+	interface ChannelWriter {
+		void write(FileChannel channel) throws IOException;
+	}
+
+	/*
+	 * Writes through a temporary file next to target and moves it over target when done;
+	 * also used by SnapshotFile
+	 */
+	static void write(File target, ChannelWriter writer) throws IOException {
+		File directory = target.getAbsoluteFile().getParentFile();
+		File temp = File.createTempFile(target.getName(), ".tmp", directory);
+
+		try {
+			try (FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.WRITE)) {
+				writer.write(channel);
+			}
+			Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			temp.delete();
+		}
+	}
+
+	/*
+	 * Private helper methods
+	 */
+	private interface RowFormatter {
+		void format(Block block, int row);
+	}
+
+	private void writeBlocks(FileChannel channel, int rows, RowFormatter formatter) throws IOException {
+		writeFully(channel, ByteBuffer.wrap(HEADER));
+
+		if (parallelism == 1 || rows <= BLOCK_ROWS) {
+			Block block = new Block();
+			for (int from = 0; from < rows; from += BLOCK_ROWS) {
+				block.length = 0;
+				block.format(formatter, from, Math.min(rows, from + BLOCK_ROWS));
+				writeFully(channel, ByteBuffer.wrap(block.bytes, 0, block.length));
+			}
+			return;
+		}
+
+		// At most two blocks per thread are formatted ahead of the writer
+		ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+		ArrayDeque<Future<Block>> pending = new ArrayDeque<>();
+		try {
+			for (int from = 0; from < rows || !pending.isEmpty(); ) {
+				while (from < rows && pending.size() < 2 * parallelism) {
+					int start = from, end = Math.min(rows, from + BLOCK_ROWS);
+					pending.add(executor.submit(() -> new Block().format(formatter, start, end)));
+					from = end;
+				}
+
+				Block block = pending.remove().get();
+				writeFully(channel, ByteBuffer.wrap(block.bytes, 0, block.length));
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while formatting", e);
+		} catch (ExecutionException e) {
+			throw new IOException("Could not format rows", e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+	}
+
+	private static byte[] utf8(String value) {
+		return value.getBytes(StandardCharsets.UTF_8);
+	}
+
+	/*
+	 * Growable byte array that CSV rows are formatted into
+	 */
+	private static class Block {
+		private byte[] bytes = new byte[BLOCK_BYTES];
+		private int length;
+		private final StringBuilder scratch = new StringBuilder(32);
+		private final byte[] number = new byte[24];	// putFixed writes digits backwards from the end
+		private long first, last, nearest;			// set by bracket
+
+		Block format(RowFormatter formatter, int from, int to) {
+			for (int row = from; row < to; ++row)
+				formatter.format(this, row);
+			return this;
+		}
+
+		void record(WeatherRecord record) {
+			putText(record.getFormattedDate());
+			put((byte) ',');
+			putText(record.getSummary());
+			put((byte) ',');
+			putText(record.getPrecipType());
+			put((byte) ',');
+			putDouble(record.getTemperature());
+			put((byte) ',');
+			putDouble(record.getApparentTemperature());
+			put((byte) ',');
+			putDouble(record.getHumidity());
+			put((byte) ',');
+			putDouble(record.getWindSpeed());
+			put((byte) ',');
+			putDouble(record.getWindBearing());
+			put((byte) ',');
+			putDouble(record.getVisibility());
+			put((byte) ',');
+			putDouble(record.getLoudCover());
+			put((byte) ',');
+			putDouble(record.getPressure());
+			put((byte) ',');
+			putText(record.getDailySummary());
+			put((byte) '\n');
+		}
+
+		void put(byte b) {
+			ensure(1);
+			bytes[length++] = b;
+		}
+
+		void put(byte[] value) {
+			ensure(value.length);
+			System.arraycopy(value, 0, bytes, length, value.length);
+			length += value.length;
+		}
+
+		/*
+		 * Plain ASCII text is copied char by char; text that needs quoting or
+		 * encoding goes through WeatherRecord.csvField and the encoder
+		 */
+		void putText(String value) {
+			if (value == null)
+				value = "null";
+
+			ensure(value.length());
+			int start = length;
+			for (int i = 0; i < value.length(); ++i) {
+				char c = value.charAt(i);
+				if (c >= 0x80 || c == ',' || c == '"' || c == '\n' || c == '\r') {
+					length = start;
+					put(utf8(WeatherRecord.csvField(value)));
+					return;
+				}
+				bytes[length++] = (byte) c;
+			}
+		}
+
+		/*
+		 * Shortest decimal that parses back to value, in plain notation with at least one
+		 * fraction digit. Values outside [PLAIN_MIN, PLAIN_MAX), where Double.toString
+		 * switches to scientific notation, go through StringBuilder.
+		 */
+		void putDouble(double value) {
+			double magnitude = Math.abs(value);
+			if (!(magnitude >= PLAIN_MIN && magnitude < PLAIN_MAX)) {
+				if (magnitude != 0) {
+					putSlow(value);
+					return;
+				}
+				if (Double.doubleToRawLongBits(value) != 0)
+					put((byte) '-');
+				putFixed(0, 0);
+				return;
+			}
+
+			// Most columns of weatherHistory.csv have up to SHORT_DECIMALS decimals. digits / 10^4
+			// is correctly rounded, so when it gives back the value, digits without its trailing
+			// zeros is the shortest decimal that does
+			double scaled = magnitude * SHORT_SCALE;
+			if (scaled < 0x1p53) {
+				long digits = Math.round(scaled);
+				if (digits / SHORT_SCALE == magnitude) {
+					int decimals = SHORT_DECIMALS;
+					for (; decimals > 0 && digits % 10 == 0; --decimals)
+						digits /= 10;
+					if (value < 0)
+						put((byte) '-');
+					putFixed(digits, decimals);
+					return;
+				}
+			}
+
+			// magnitude = mantissa * 2^exponent. The reals that round to it lie strictly
+			// between (center - gap) and (center + 2) times 2^(exponent - 2); ties are
+			// left out, which at worst costs a digit Double.toString would not print
+			long bits = Double.doubleToRawLongBits(magnitude);
+			int exponent = (int) (bits >>> 52) - 1075;
+			long mantissa = bits & ((1L << 52) - 1) | 1L << 52;
+			long center = 4 * mantissa;
+			int gap = mantissa == 1L << 52 ? 1 : 2;
+
+			// 17 significant digits always identify a double and most values need 16 or 17,
+			// so those are tried first; estimate is at most floor(log10(magnitude))
+			int estimate = (exponent + 52) * 78913 >> 18;
+			int most = 16 - estimate;
+			int decimals;
+			if (!bracket(center, gap, exponent, most - 1)) {
+				if (!bracket(center, gap, exponent, most)) {
+					putSlow(value);
+					return;
+				}
+				decimals = most;
+			} else if (!bracket(center, gap, exponent, most - 2)) {
+				decimals = most - 1;
+			} else {
+				int fewest = 0;
+				most -= 2;
+				while (fewest < most) {
+					int middle = (fewest + most) >>> 1;
+					if (bracket(center, gap, exponent, middle))
+						most = middle;
+					else
+						fewest = middle + 1;
+				}
+				decimals = most;
+			}
+
+			// The last successful bracket was at decimals; of the integers it found, the
+			// one nearest the value
+			if (value < 0)
+				put((byte) '-');
+			putFixed(Math.max(first, Math.min(nearest, last)), decimals);
+		}
+
+		/*
+		 * Scales the interval around center by 10^decimals and sets first and last to the
+		 * lowest and highest integer strictly inside it, and nearest to the scaled center
+		 * rounded half to even. Returns false, leaving them unchanged, if there is none
+		 */
+		private boolean bracket(long center, int gap, int exponent, int decimals) {
+			long power = POWERS_OF_FIVE[decimals];
+			int shift = 2 - exponent - decimals;	// in [10, 64] over the plain range
+
+			long high = Math.multiplyHigh(center, power), low = center * power;
+			long belowLow = low - gap * power;
+			long belowHigh = Long.compareUnsigned(low, gap * power) < 0 ? high - 1 : high;
+			long aboveLow = low + 2 * power;
+			long aboveHigh = Long.compareUnsigned(aboveLow, low) < 0 ? high + 1 : high;
+
+			long lowest = shiftRight(belowHigh, belowLow, shift) + 1;
+			long highest = shiftRight(aboveHigh, aboveLow, shift);
+			if (isMultiple(aboveHigh, aboveLow, shift))
+				highest--;
+			if (lowest > highest)
+				return false;
+
+			first = lowest;
+			last = highest;
+			nearest = shiftRight(high, low, shift);
+			long remainder = shift == 64 ? low : low & ((1L << shift) - 1);
+			int half = Long.compareUnsigned(remainder, 1L << (shift - 1));
+			if (half > 0 || half == 0 && (nearest & 1) != 0)
+				nearest++;
+			return true;
+		}
+
+		/*
+		 * floor(high:low / 2^shift) for 0 < shift <= 64, where the result fits in a long
+		 */
+		private static long shiftRight(long high, long low, int shift) {
+			return shift == 64 ? high : high << (64 - shift) | low >>> shift;
+		}
+
+		private static boolean isMultiple(long high, long low, int shift) {
+			return (shift == 64 ? low : low & ((1L << shift) - 1)) == 0;
+		}
+
+		private void putSlow(double value) {
+			scratch.setLength(0);
+			scratch.append(value);
+			ensure(scratch.length());
+			for (int i = 0; i < scratch.length(); ++i)
+				bytes[length++] = (byte) scratch.charAt(i);
+		}
+
+		/*
+		 * digits / 10^decimals with at least one fraction digit and a leading zero below one
+		 */
+		private void putFixed(long digits, int decimals) {
+			int position = number.length;
+			if (decimals == 0)
+				number[--position] = '0';
+			int remaining = decimals;
+			for (; remaining >= 2; remaining -= 2) {
+				int pair = 2 * (int) (digits % 100);
+				number[--position] = DIGIT_PAIRS[pair + 1];
+				number[--position] = DIGIT_PAIRS[pair];
+				digits /= 100;
+			}
+			if (remaining == 1) {
+				number[--position] = (byte) ('0' + digits % 10);
+				digits /= 10;
+			}
+			number[--position] = '.';
+			do {
+				number[--position] = (byte) ('0' + digits % 10);
+				digits /= 10;
+			} while (digits != 0);
+
+			ensure(number.length - position);
+			System.arraycopy(number, position, bytes, length, number.length - position);
+			length += number.length - position;
+		}
+
+		private void ensure(int count) {
+			if (length + count > bytes.length)
+				bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + count));
+		}
+	}
+}
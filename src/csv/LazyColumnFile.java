@@ -0,0 +1,259 @@
+package csv;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import csv.WeatherRecord.WeatherField;
+
+/**
+ * Weather CSV read column by column, on demand.
+ *
+ * Opening the file only maps it and records where every data line starts,
+ * in one newline scan. A column is parsed from all lines the first time it
+ * is asked for and then kept, so sorting by temperature parses one field per
+ * line and memory grows only with the columns that are used.
+ *
+ * Unlike the eager loaders, a line with missing or malformed fields is not
+ * dropped: its unreadable numeric fields read as NaN and text fields as null.
+ */
+public class LazyColumnFile implements WeatherColumns {
+	private static final WeatherField[] FIELDS = WeatherField.values();
+
+	// Segments overlap by MAX_LINE so every line lies inside the segment its start falls in
+	private static final long SEGMENT_SIZE = 1L << 30;
+	private static final int MAX_LINE = 1 << 20;
+	private static final int LENGTH_BITS = 24;
+	private static final int SCAN_CHUNK = 1 << 16;
+
+	private final File file;
+	private final MappedByteBuffer[] segments;
+	private final long[] lines;	// per row: offset << LENGTH_BITS | length
+	private final LineParser parser = new LineParser();
+
+	private final double[][] numeric = new double[FIELDS.length][];
+	private final int[][] codes = new int[FIELDS.length][];
+	private final String[][] dictionaries = new String[FIELDS.length][];
+	private long[] epochMillis;
+
+	public LazyColumnFile(File file) throws IOException {
+		this.file = file;
+
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			long size = channel.size();
+			segments = new MappedByteBuffer[(int) Math.max(1, (size + SEGMENT_SIZE - 1) / SEGMENT_SIZE)];
+			for (int i = 0; i < segments.length; ++i) {
+				long position = i * SEGMENT_SIZE;
+				segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(size - position, SEGMENT_SIZE + MAX_LINE));
+			}
+			lines = indexLines(size);
+		}
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public int size() {
+		return lines.length;
+	}
+
+	/**
+	 * Whether a column has already been parsed.
+	 */
+	public synchronized boolean isLoaded(WeatherField field) {
+		return WeatherColumnStore.isNumeric(field) ? numeric[field.ordinal()] != null : codes[field.ordinal()] != null;
+	}
+
+	public synchronized double[] getColumn(WeatherField field) {
+		if (!WeatherColumnStore.isNumeric(field))
+			throw new IllegalArgumentException("Not a numeric field: " + field);
+
+		int f = field.ordinal();
+		if (numeric[f] == null) {
+			double[] column = new double[lines.length];
+			for (int row = 0; row < column.length; ++row)
+				column[row] = parser.parseNumber(segment(row), start(row), start(row) + length(row), f);
+			numeric[f] = column;
+		}
+		return numeric[f];
+	}
+
+	public synchronized int[] getCodes(WeatherField field) {
+		loadText(field);
+		return codes[field.ordinal()];
+	}
+
+	public synchronized int getCardinality(WeatherField field) {
+		loadText(field);
+		return dictionaries[field.ordinal()].length;
+	}
+
+	public synchronized String decode(WeatherField field, int code) {
+		loadText(field);
+		return dictionaries[field.ordinal()][code];
+	}
+
+	public synchronized long[] getEpochMillis() {
+		if (epochMillis == null) {
+			// Each distinct date string is parsed once
+			int[] dateCodes = getCodes(WeatherField.FORMATTED_DATE);
+			String[] dates = dictionaries[WeatherField.FORMATTED_DATE.ordinal()];
+
+			long[] epochOfCode = new long[dates.length];
+			for (int code = 0; code < dates.length; ++code)
+				epochOfCode[code] = Timestamps.parseEpochMillis(dates[code]);
+
+			epochMillis = new long[dateCodes.length];
+			for (int row = 0; row < dateCodes.length; ++row)
+				epochMillis[row] = epochOfCode[dateCodes[row]];
+		}
+		return epochMillis;
+	}
+
+	public double getDouble(WeatherField field, int row) {
+		return getColumn(field)[row];
+	}
+
+	public String getString(WeatherField field, int row) {
+		return decode(field, getCodes(field)[row]);
+	}
+
+	/**
+	 * The raw text of a row, without its line terminator.
+	 */
+	public String getLine(int row) {
+		byte[] bytes = new byte[length(row)];
+		segment(row).get(start(row), bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/*
+	 * Private helper methods
+	 */
+	private ByteBuffer segment(int row) {
+		return segments[(int) ((lines[row] >>> LENGTH_BITS) / SEGMENT_SIZE)];
+	}
+
+	private int start(int row) {
+		return (int) ((lines[row] >>> LENGTH_BITS) % SEGMENT_SIZE);
+	}
+
+	private int length(int row) {
+		return (int) (lines[row] & ((1L << LENGTH_BITS) - 1));
+	}
+
+	/*
+	 * Single newline scan: packs the offset and length of every non-empty line after the header
+	 */
+	private long[] indexLines(long size) throws IOException {
+		long[] index = new long[1024];
+		int count = 0;
+		boolean header = true;
+		long lineStart = 0;
+		byte[] chunk = new byte[SCAN_CHUNK];
+
+		for (long position = 0; position < size; ) {
+			int length = (int) Math.min(SCAN_CHUNK, size - position);
+			MappedByteBuffer segment = segments[(int) (position / SEGMENT_SIZE)];
+			length = (int) Math.min(length, SEGMENT_SIZE - position % SEGMENT_SIZE);
+			segment.get((int) (position % SEGMENT_SIZE), chunk, 0, length);
+
+			for (int i = 0; i < length; ++i) {
+				if (chunk[i] != '\n')
+					continue;
+
+				long lineEnd = position + i;
+				if (header) {
+					header = false;
+				} else {
+					if (count == index.length)
+						index = Arrays.copyOf(index, 2 * count);
+					count = add(index, count, lineStart, lineEnd);
+				}
+				lineStart = lineEnd + 1;
+			}
+			position += length;
+		}
+
+		// Last line without a terminator
+		if (!header && lineStart < size) {
+			if (count == index.length)
+				index = Arrays.copyOf(index, count + 1);
+			count = add(index, count, lineStart, size);
+		}
+
+		return Arrays.copyOf(index, count);
+	}
+
+	/*
+	 * Appends the line [start, end) unless it is empty; returns the new count
+	 */
+	private int add(long[] index, int count, long start, long end) throws IOException {
+		long length = end - start;
+		if (length > 0 && byteAt(end - 1) == '\r')
+			length--;
+		if (length == 0)
+			return count;
+		if (length > MAX_LINE)
+			throw new IOException("Line longer than " + MAX_LINE + " bytes at offset " + start + " of " + file);
+
+		index[count] = start << LENGTH_BITS | length;
+		return count + 1;
+	}
+
+	private byte byteAt(long position) {
+		return segments[(int) (position / SEGMENT_SIZE)].get((int) (position % SEGMENT_SIZE));
+	}
+
+	/*
+	 * Parses a text column into a dictionary in value order, nulls last, and one code per row
+	 */
+	private void loadText(WeatherField field) {
+		if (WeatherColumnStore.isNumeric(field))
+			throw new IllegalArgumentException("Not a text field: " + field);
+
+		int f = field.ordinal();
+		if (codes[f] != null)
+			return;
+
+		HashMap<String, Integer> lookup = new HashMap<>();
+		ArrayList<String> values = new ArrayList<>();
+		int[] column = new int[lines.length];
+
+		for (int row = 0; row < column.length; ++row) {
+			String value = parser.parseText(segment(row), start(row), start(row) + length(row), f);
+			Integer code = lookup.get(value);
+			if (code == null) {
+				code = values.size();
+				values.add(value);
+				lookup.put(value, code);
+			}
+			column[row] = code;
+		}
+
+		Integer[] byValue = new Integer[values.size()];
+		for (int code = 0; code < byValue.length; ++code)
+			byValue[code] = code;
+		Arrays.sort(byValue, (a, b) -> TEXT_ORDER.compare(values.get(a), values.get(b)));
+
+		int[] newCode = new int[byValue.length];
+		String[] dictionary = new String[byValue.length];
+		for (int rank = 0; rank < byValue.length; ++rank) {
+			newCode[byValue[rank]] = rank;
+			dictionary[rank] = values.get(byValue[rank]);
+		}
+		for (int row = 0; row < column.length; ++row)
+			column[row] = newCode[column[row]];
+
+		dictionaries[f] = dictionary;
+		codes[f] = column;
+	}
+}
@@ -0,0 +1,514 @@
+package csv;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Parses weather CSV lines straight from bytes.
+ *
+ * Field boundaries are found in a single scan. Fields may be quoted as in
+ * RFC 4180, holding commas and doubled quotes; a line break inside quotes is
+ * not supported, since files are split into lines before parsing. Decimals are
+ * built from their digits without an intermediate String: short values with
+ * Clinger's exact fast path (up to 2^53 for the digits and 22 fractional
+ * places), and values with up to 18 digits, such as the 16-17 digit
+ * temperatures in the dataset, with the Eisel-Lemire algorithm. Anything else
+ * goes through Double.parseDouble; every path yields the same double.
+ *
+ * Summary, precip type and daily summary are interned per column, so rows
+ * with the same text share one String and only the date column allocates a
+ * String on every row.
+ *
+ * Malformed lines are recognised without exceptions and counted in the
+ * parser's LoadReport instead of printed.
+ *
+ * A parser keeps scratch state and must not be shared between threads.
+ */
+class LineParser {
+	static final int FIELD_COUNT = 12;
+
+	private static final long MAX_EXACT_MANTISSA = 1L << 53;
+	private static final long MAX_MANTISSA = 999_999_999_999_999_999L;
+	private static final int MIN_POWER = -27;
+	private static final double[] POWERS_OF_TEN = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+		1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+	};
+
+	// 128-bit approximations of 5^q for q in [MIN_POWER, 0], as used by Eisel-Lemire
+	private static final long[] POWERS_OF_FIVE_HIGH = new long[1 - MIN_POWER];
+	private static final long[] POWERS_OF_FIVE_LOW = new long[1 - MIN_POWER];
+
+	static {
+		BigInteger mask = BigInteger.ONE.shiftLeft(64).subtract(BigInteger.ONE);
+
+		for (int q = MIN_POWER; q <= 0; ++q) {
+			BigInteger power = BigInteger.valueOf(5).pow(-q);
+			// q = 0 is 2^127 exactly; below that, floor(2^b / 5^-q) + 1 with b putting it in [2^127, 2^128)
+			BigInteger value = q == 0 ? BigInteger.ONE.shiftLeft(127)
+				: BigInteger.ONE.shiftLeft(127 + power.bitLength()).divide(power).add(BigInteger.ONE);
+
+			POWERS_OF_FIVE_HIGH[q - MIN_POWER] = value.shiftRight(64).longValue();
+			POWERS_OF_FIVE_LOW[q - MIN_POWER] = value.and(mask).longValue();
+		}
+	}
+
+	private static final WeatherRecord.WeatherField[] FIELDS = WeatherRecord.WeatherField.values();
+
+	// Why the last line was rejected, for LoadReport samples
+	private enum Problem { MISSING_FIELDS, UNTERMINATED_QUOTE, TEXT_AFTER_QUOTE, NOT_A_NUMBER }
+
+	private final int[] starts = new int[FIELD_COUNT];
+	private final int[] ends = new int[FIELD_COUNT];
+	private final boolean[] escaped = new boolean[FIELD_COUNT];	// quoted field holding doubled quotes
+	private final LoadReport report;
+	private Problem problem;
+	private int problemField;
+	private final StringCache summaries = new StringCache();
+	private final StringCache precipTypes = new StringCache();
+	private final StringCache dailySummaries = new StringCache();
+	private byte[] line = new byte[512];
+
+	LineParser() {
+		this(new LoadReport());
+	}
+
+	LineParser(LoadReport report) {
+		this.report = report;
+	}
+
+	LoadReport getReport() {
+		return report;
+	}
+
+	/*
+	 * Parses the line in buffer[start, end); returns null if it is malformed
+	 */
+	WeatherRecord parse(ByteBuffer buffer, int start, int end) {
+		return parse(copy(buffer, start, end), 0, end - start);
+	}
+
+	WeatherRecord parse(byte[] buffer, int start, int end) {
+		problem = null;
+		if (!split(buffer, start, end))
+			return reject(buffer, start, end);
+
+		double temperature = number(buffer, 3);
+		double apparentTemperature = number(buffer, 4);
+		double humidity = number(buffer, 5);
+		double windSpeed = number(buffer, 6);
+		double windBearing = number(buffer, 7);
+		double visibility = number(buffer, 8);
+		double loudCover = number(buffer, 9);
+		double pressure = number(buffer, 10);
+		if (problem != null)
+			return reject(buffer, start, end);
+
+		report.accept();
+		return new WeatherRecord(
+			text(buffer, 0),
+			text(summaries, buffer, 1),
+			text(precipTypes, buffer, 2),
+			temperature, apparentTemperature, humidity, windSpeed,
+			windBearing, visibility, loudCover, pressure,
+			text(dailySummaries, buffer, 11)
+		);
+	}
+
+	/*
+	 * Parses the line straight into the columns of a store; returns false if it is malformed
+	 */
+	boolean parseInto(ByteBuffer buffer, int start, int end, WeatherColumnStore store) {
+		return parseInto(copy(buffer, start, end), 0, end - start, store);
+	}
+
+	boolean parseInto(byte[] buffer, int start, int end, WeatherColumnStore store) {
+		problem = null;
+		if (!split(buffer, start, end)) {
+			reject(buffer, start, end);
+			return false;
+		}
+
+		double temperature = number(buffer, 3);
+		double apparentTemperature = number(buffer, 4);
+		double humidity = number(buffer, 5);
+		double windSpeed = number(buffer, 6);
+		double windBearing = number(buffer, 7);
+		double visibility = number(buffer, 8);
+		double loudCover = number(buffer, 9);
+		double pressure = number(buffer, 10);
+		if (problem != null) {
+			reject(buffer, start, end);
+			return false;
+		}
+
+		report.accept();
+		store.addRow(
+			text(buffer, 0),
+			text(summaries, buffer, 1),
+			text(precipTypes, buffer, 2),
+			temperature, apparentTemperature, humidity, windSpeed,
+			windBearing, visibility, loudCover, pressure,
+			text(dailySummaries, buffer, 11)
+		);
+		return true;
+	}
+
+	/*
+	 * Parses one numeric field of the line, without looking at the fields after it;
+	 * NaN if the field is missing or not a number
+	 */
+	double parseNumber(ByteBuffer buffer, int start, int end, int field) {
+		byte[] bytes = copy(buffer, start, end);
+		if (!locate(bytes, 0, end - start, field))
+			return Double.NaN;
+
+		return number(bytes, field);
+	}
+
+	/*
+	 * Parses one text field of the line, interning repeated values; null if the field is missing
+	 */
+	String parseText(ByteBuffer buffer, int start, int end, int field) {
+		byte[] bytes = copy(buffer, start, end);
+		if (!locate(bytes, 0, end - start, field))
+			return null;
+
+		return switch (field) {
+			case 1 -> text(summaries, bytes, 1);
+			case 2 -> text(precipTypes, bytes, 2);
+			case 11 -> text(dailySummaries, bytes, 11);
+			default -> text(bytes, field);
+		};
+	}
+
+	/*
+	 * Copies one line into the scratch array; element access on a byte[] is much
+	 * cheaper than on a mapped buffer and every byte is read several times
+	 */
+	private byte[] copy(ByteBuffer buffer, int start, int end) {
+		int length = end - start;
+		if (line.length < length)
+			line = new byte[Math.max(length, 2 * line.length)];
+		buffer.get(start, line, 0, length);
+		return line;
+	}
+
+	/*
+	 * Records the boundaries of the first FIELD_COUNT fields
+	 */
+	private boolean split(byte[] buffer, int start, int end) {
+		int count = scan(buffer, start, end, FIELD_COUNT);
+		if (count >= 0 && count < FIELD_COUNT) {
+			problem = Problem.MISSING_FIELDS;
+			problemField = count;
+		}
+		return count == FIELD_COUNT;
+	}
+
+	/*
+	 * Records the boundaries of one field, scanning only up to its end
+	 */
+	private boolean locate(byte[] buffer, int start, int end, int field) {
+		return scan(buffer, start, end, field + 1) == field + 1;
+	}
+
+	/*
+	 * Records the boundaries of up to limit fields and returns how many the line has,
+	 * or -1 with problem set when a quoted field is malformed. A quoted field's
+	 * boundaries exclude the quotes; escaped marks those with doubled quotes inside.
+	 * Fields past limit are not looked at.
+	 */
+	private int scan(byte[] buffer, int start, int end, int limit) {
+		int field = 0;
+		int i = start;
+
+		while (true) {
+			if (i < end && buffer[i] == '"') {
+				boolean doubled = false;
+				starts[field] = ++i;
+				while (true) {
+					if (i == end) {
+						problem = Problem.UNTERMINATED_QUOTE;
+						problemField = field;
+						return -1;
+					}
+					if (buffer[i] == '"') {
+						if (i + 1 == end || buffer[i + 1] != '"')
+							break;
+						doubled = true;
+						i++;
+					}
+					i++;
+				}
+				ends[field] = i++;
+				escaped[field] = doubled;
+
+				if (i < end && buffer[i] != ',') {
+					problem = Problem.TEXT_AFTER_QUOTE;
+					problemField = field;
+					return -1;
+				}
+			} else {
+				starts[field] = i;
+				while (i < end && buffer[i] != ',')
+					i++;
+				ends[field] = i;
+				escaped[field] = false;
+			}
+
+			if (++field == limit || i >= end)
+				return field;
+			i++;	// past the comma
+		}
+	}
+
+	private WeatherRecord reject(byte[] buffer, int start, int end) {
+		report.reject(report.isSampling() ? describeProblem(buffer) : null, buffer, start, end);
+		return null;
+	}
+
+	private String describeProblem(byte[] buffer) {
+		return switch (problem) {
+			case MISSING_FIELDS -> "expected " + FIELD_COUNT + " fields, found " + problemField;
+			case UNTERMINATED_QUOTE -> "unterminated quote in " + FIELDS[problemField];
+			case TEXT_AFTER_QUOTE -> "text after closing quote in " + FIELDS[problemField];
+			case NOT_A_NUMBER -> FIELDS[problemField] + " is not a number: '"
+				+ decode(buffer, starts[problemField], ends[problemField], StandardCharsets.UTF_8) + "'";
+		};
+	}
+
+	private String text(byte[] buffer, int field) {
+		String value = decode(buffer, starts[field], ends[field], StandardCharsets.UTF_8);
+		return escaped[field] ? value.replace("\"\"", "\"") : value;
+	}
+
+	private String text(StringCache cache, byte[] buffer, int field) {
+		return escaped[field] ? text(buffer, field) : cache.get(buffer, starts[field], ends[field]);
+	}
+
+	/*
+	 * NaN with problem set when the field is not a number; a literal NaN is accepted
+	 */
+	private double number(byte[] buffer, int field) {
+		double value = parseDouble(buffer, starts[field], ends[field]);
+		if (value != value && !isNumber(buffer, starts[field], ends[field])) {
+			problem = Problem.NOT_A_NUMBER;
+			problemField = field;
+		}
+		return value;
+	}
+
+	/*
+	 * Decimal parse of buffer[from, to), exact and allocation-free for plain decimals;
+	 * NaN when it is not a number
+	 */
+	static double parseDouble(byte[] buffer, int from, int to) {
+		int i = from;
+		boolean negative = false;
+
+		if (i < to && (buffer[i] == '-' || buffer[i] == '+')) {
+			negative = buffer[i] == '-';
+			i++;
+		}
+
+		long mantissa = 0;
+		int scale = 0;
+		boolean dot = false, digits = false;
+
+		for (; i < to; ++i) {
+			int c = buffer[i];
+
+			if (c >= '0' && c <= '9') {
+				if (mantissa > (MAX_MANTISSA - 9) / 10)
+					return slowParseDouble(buffer, from, to);
+				mantissa = mantissa * 10 + (c - '0');
+				digits = true;
+				if (dot)
+					scale++;
+			} else if (c == '.' && !dot) {
+				dot = true;
+			} else {
+				// Exponents, NaN, Infinity, whitespace or garbage
+				return slowParseDouble(buffer, from, to);
+			}
+		}
+
+		if (!digits)
+			return slowParseDouble(buffer, from, to);
+
+		double value;
+		if (mantissa <= MAX_EXACT_MANTISSA && scale < POWERS_OF_TEN.length) {
+			// Both operands are exact doubles, so the IEEE division is correctly rounded
+			value = scale == 0 ? mantissa : mantissa / POWERS_OF_TEN[scale];
+		} else {
+			value = eiselLemire(mantissa, -scale);
+			if (Double.isNaN(value))
+				return slowParseDouble(buffer, from, to);
+		}
+		return negative ? -value : value;
+	}
+
+	/*
+	 * Correctly rounded w * 10^q for 0 < w < 2^63, or NaN when the result cannot be decided
+	 * here (q out of table range, subnormals, exact halfway ties). Follows fast_float.
+	 */
+	private static double eiselLemire(long w, int q) {
+		if (w == 0)
+			return 0.0;
+		if (q < MIN_POWER || q > 0)
+			return Double.NaN;
+
+		int lz = Long.numberOfLeadingZeros(w);
+		w <<= lz;
+
+		int index = q - MIN_POWER;
+		long high = unsignedMultiplyHigh(w, POWERS_OF_FIVE_HIGH[index]);
+		long low = w * POWERS_OF_FIVE_HIGH[index];
+
+		// Only look at the lower half of 5^q when the upper product leaves the rounding undecided
+		if ((high & 0x1FF) == 0x1FF) {
+			long carry = unsignedMultiplyHigh(w, POWERS_OF_FIVE_LOW[index]);
+			low += carry;
+			if (Long.compareUnsigned(carry, low) > 0)
+				high++;
+		}
+
+		int upperBit = (int) (high >>> 63);
+		int shift = upperBit + 9;
+		long mantissa = high >>> shift;
+		int exponent = (((152170 + 65536) * q) >> 16) + 63 + upperBit - lz + 1023;
+
+		if (exponent <= 0)
+			return Double.NaN;
+
+		// Exactly halfway between two doubles: round to even
+		if (Long.compareUnsigned(low, 1) <= 0 && q >= -4 && (mantissa & 3) == 1 && (mantissa << shift) == high)
+			mantissa &= ~1L;
+
+		mantissa += mantissa & 1;
+		mantissa >>>= 1;
+		if (mantissa >= (2L << 52)) {
+			mantissa = 1L << 52;
+			exponent++;
+		}
+		mantissa &= ~(1L << 52);
+
+		if (exponent >= 0x7FF)
+			return Double.NaN;
+		return Double.longBitsToDouble(mantissa | ((long) exponent << 52));
+	}
+
+	private static long unsignedMultiplyHigh(long x, long y) {
+		return Math.multiplyHigh(x, y) + ((x >> 63) & y) + ((y >> 63) & x);
+	}
+
+	private static double slowParseDouble(byte[] buffer, int from, int to) {
+		if (!isNumber(buffer, from, to))
+			return Double.NaN;
+		return Double.parseDouble(decode(buffer, from, to, StandardCharsets.ISO_8859_1));
+	}
+
+	/*
+	 * Whether Double.parseDouble accepts buffer[from, to), hexadecimal forms aside:
+	 * blanks around an optionally signed NaN, Infinity or decimal with an optional
+	 * exponent and float or double suffix
+	 */
+	static boolean isNumber(byte[] buffer, int from, int to) {
+		while (from < to && (buffer[from] & 0xFF) <= ' ')
+			from++;
+		while (to > from && (buffer[to - 1] & 0xFF) <= ' ')
+			to--;
+
+		int i = from;
+		if (i < to && (buffer[i] == '-' || buffer[i] == '+'))
+			i++;
+		if (matches(buffer, i, to, "NaN") || matches(buffer, i, to, "Infinity"))
+			return true;
+
+		int digits = 0;
+		for (; i < to && buffer[i] >= '0' && buffer[i] <= '9'; ++i)
+			digits++;
+		if (i < to && buffer[i] == '.') {
+			for (++i; i < to && buffer[i] >= '0' && buffer[i] <= '9'; ++i)
+				digits++;
+		}
+		if (digits == 0)
+			return false;
+
+		if (i < to && (buffer[i] == 'e' || buffer[i] == 'E')) {
+			if (++i < to && (buffer[i] == '-' || buffer[i] == '+'))
+				i++;
+			int exponentDigits = 0;
+			for (; i < to && buffer[i] >= '0' && buffer[i] <= '9'; ++i)
+				exponentDigits++;
+			if (exponentDigits == 0)
+				return false;
+		}
+		if (i < to && "fFdD".indexOf(buffer[i]) >= 0)
+			i++;
+		return i == to;
+	}
+
+	private static boolean matches(byte[] buffer, int from, int to, String word) {
+		if (to - from != word.length())
+			return false;
+		for (int i = 0; i < word.length(); ++i) {
+			if (buffer[from + i] != word.charAt(i))
+				return false;
+		}
+		return true;
+	}
+
+	static String decode(byte[] buffer, int from, int to, Charset charset) {
+		return new String(buffer, from, to - from, charset);
+	}
+
+	/*
+	 * Interns the values of one text column: a direct-mapped cache from field bytes
+	 * to the String last decoded from them, backed by a table of canonical Strings
+	 * so every row with the same value shares one instance
+	 */
+	private static class StringCache {
+		private static final int SIZE = 256;
+		private static final int MAX_LENGTH = 256;
+		private static final int MAX_INTERNED = 1 << 16;
+
+		private final byte[][] keys = new byte[SIZE][];
+		private final String[] values = new String[SIZE];
+		private final HashMap<String, String> interned = new HashMap<>();
+
+		String get(byte[] buffer, int from, int to) {
+			int length = to - from;
+			if (length > MAX_LENGTH)
+				return decode(buffer, from, to, StandardCharsets.UTF_8);
+
+			int hash = length;
+			for (int i = from; i < to; ++i)
+				hash = 31 * hash + buffer[i];
+			int slot = (hash ^ (hash >>> 16)) & (SIZE - 1);
+
+			byte[] key = keys[slot];
+			if (key != null && Arrays.equals(key, 0, key.length, buffer, from, to))
+				return values[slot];
+
+			byte[] bytes = Arrays.copyOfRange(buffer, from, to);
+			String value = new String(bytes, StandardCharsets.UTF_8);
+
+			// Past MAX_INTERNED the column is not low-cardinality and interning would only cost memory
+			String canonical = interned.get(value);
+			if (canonical != null)
+				value = canonical;
+			else if (interned.size() < MAX_INTERNED)
+				interned.put(value, value);
+
+			keys[slot] = bytes;
+			values[slot] = value;
+			return value;
+		}
+	}
+}
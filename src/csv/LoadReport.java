@@ -0,0 +1,146 @@
+package csv;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of one load: how many data lines were read, how many were rejected
+ * as malformed, and the first few rejected lines with the reason.
+ *
+ * Line numbers count data lines from 1, after the header and skipping blank
+ * lines. Rejected lines are only copied while the sample is not full, so a
+ * dirty file costs a counter increment per bad line.
+ */
+public class LoadReport {
+	public static final int SAMPLE_SIZE = 10;
+	private static final int MAX_SAMPLE_TEXT = 200;
+
+	private long lines;
+	private long rejected;
+	private final List<BadLine> samples = new ArrayList<>();
+	private boolean overBudget;
+	private String snapshotError;
+
+	/**
+	 * One sampled malformed line.
+	 */
+	public static class BadLine {
+		private final long line;
+		private final String reason;
+		private final String text;
+
+		BadLine(long line, String reason, String text) {
+			this.line = line;
+			this.reason = reason;
+			this.text = text;
+		}
+
+		public long getLine() { return line; }
+		public String getReason() { return reason; }
+
+		/**
+		 * The line as read, cut to its first 200 bytes.
+		 */
+		public String getText() { return text; }
+
+		@Override
+		public String toString() {
+			return "line " + line + ": " + reason + ": " + text;
+		}
+	}
+
+	/*
+	 * Report of a load that only had good rows, such as one from a snapshot
+	 */
+	static LoadReport ofRows(long rows) {
+		LoadReport report = new LoadReport();
+		report.lines = rows;
+		return report;
+	}
+
+	/*
+	 * Counts a line that parsed
+	 */
+	void accept() {
+		lines++;
+	}
+
+	/*
+	 * Whether the next rejected line goes into the sample; callers only build a reason then
+	 */
+	boolean isSampling() {
+		return samples.size() < SAMPLE_SIZE;
+	}
+
+	/*
+	 * Counts a malformed line and samples it while there is room
+	 */
+	void reject(String reason, byte[] buffer, int start, int end) {
+		lines++;
+		rejected++;
+
+		if (isSampling()) {
+			String text = LineParser.decode(buffer, start, Math.min(end, start + MAX_SAMPLE_TEXT), StandardCharsets.UTF_8);
+			samples.add(new BadLine(lines, reason, text));
+		}
+	}
+
+	/*
+	 * Adds the report of the lines that follow this one's, as for the next chunk of a file
+	 */
+	void append(LoadReport next) {
+		for (BadLine sample : next.samples) {
+			if (samples.size() == SAMPLE_SIZE)
+				break;
+			samples.add(new BadLine(lines + sample.line, sample.reason, sample.text));
+		}
+		lines += next.lines;
+		rejected += next.rejected;
+	}
+
+	void setOverBudget(boolean overBudget) {
+		this.overBudget = overBudget;
+	}
+
+	void setSnapshotError(String snapshotError) {
+		this.snapshotError = snapshotError;
+	}
+
+	public long getLines() { return lines; }
+	public long getRejected() { return rejected; }
+	public long getRows() { return lines - rejected; }
+	public List<BadLine> getSamples() { return Collections.unmodifiableList(samples); }
+
+	public double getRejectedFraction() {
+		return lines == 0 ? 0 : (double) rejected / lines;
+	}
+
+	/**
+	 * Whether more lines were rejected than the reader's error budget allows, in
+	 * which case the load returned no rows.
+	 */
+	public boolean isOverBudget() { return overBudget; }
+
+	/**
+	 * Why the snapshot of a cached load could not be written, or null. The rows
+	 * loaded are unaffected; the next load parses the CSV again.
+	 */
+	public String getSnapshotError() { return snapshotError; }
+
+	@Override
+	public String toString() {
+		StringBuilder text = new StringBuilder();
+		text.append(lines).append(" lines, ").append(rejected).append(" rejected")
+			.append(String.format(" (%.2f%%)", 100 * getRejectedFraction()));
+		if (overBudget)
+			text.append(", over the error budget");
+		if (snapshotError != null)
+			text.append(System.lineSeparator()).append("  ").append(snapshotError);
+
+		for (BadLine sample : samples)
+			text.append(System.lineSeparator()).append("  ").append(sample);
+		return text.toString();
+	}
+}
@@ -0,0 +1,160 @@
+package csv;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Walks the lines of a file through memory-mapped segments.
+ *
+ * Lines are handed out as [start, end) byte ranges of the mapped buffer,
+ * without the line terminator, so callers can parse them in place without
+ * building a String per line. Files larger than one segment are mapped piece
+ * by piece, each piece ending on a newline.
+ */
+class MappedLines {
+	private static final long SEGMENT_SIZE = 1L << 30;
+
+	interface LineVisitor {
+		void visit(ByteBuffer buffer, int start, int end);
+	}
+
+	private MappedLines() {}
+
+	/*
+	 * Visits every line of the file, optionally skipping the first (header) line
+	 */
+	static void forEach(File file, boolean skipHeader, LineVisitor visitor) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			long from = skipHeader ? firstLineEnd(channel) : 0;
+			forEach(channel, from, channel.size(), visitor);
+		}
+	}
+
+	/*
+	 * Visits the lines in [from, to); from must be a line start and to a line end or EOF
+	 */
+	static void forEach(FileChannel channel, long from, long to, LineVisitor visitor) throws IOException {
+		long position = from;
+
+		while (position < to) {
+			long length = Math.min(SEGMENT_SIZE, to - position);
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+			int limit = (int) length;
+
+			// Stop the segment after its last complete line unless this is the last segment
+			if (position + length < to) {
+				while (limit > 0 && buffer.get(limit - 1) != '\n')
+					limit--;
+				if (limit == 0)
+					throw new IOException("Line longer than " + SEGMENT_SIZE + " bytes at offset " + position);
+			}
+
+			int start = 0;
+			for (int i = 0; i < limit; ++i) {
+				if (buffer.get(i) == '\n') {
+					visitLine(buffer, start, i, visitor);
+					start = i + 1;
+				}
+			}
+			if (start < limit)
+				visitLine(buffer, start, limit, visitor);
+
+			position += limit;
+		}
+	}
+
+	/*
+	 * Cuts [from, to) into at most parts ranges of similar size, each starting at a
+	 * line start; returns the range boundaries, from first and to last
+	 */
+	static long[] split(FileChannel channel, long from, long to, int parts) throws IOException {
+		long[] bounds = new long[parts + 1];
+		int count = 0;
+		bounds[count++] = from;
+
+		ByteBuffer window = ByteBuffer.allocate(1 << 16);
+		for (int i = 1; i < parts; ++i) {
+			long target = Math.max(from + (to - from) * i / parts, bounds[count - 1]);
+			long lineStart = nextLineStart(channel, target, to, window);
+			if (lineStart > bounds[count - 1] && lineStart < to)
+				bounds[count++] = lineStart;
+		}
+		bounds[count++] = to;
+
+		return Arrays.copyOf(bounds, count);
+	}
+
+	/*
+	 * Offset just past the first line terminator, or the file size if there is none
+	 */
+	static long firstLineEnd(FileChannel channel) throws IOException {
+		long size = channel.size();
+		MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, 1 << 20));
+
+		for (int i = 0; i < buffer.limit(); ++i) {
+			if (buffer.get(i) == '\n')
+				return i + 1;
+		}
+		return size;
+	}
+
+	/*
+	 * Offset just past the last newline in [from, to), or from if there is none
+	 */
+	static long lastLineEnd(FileChannel channel, long from, long to) throws IOException {
+		ByteBuffer window = ByteBuffer.allocate(1 << 16);
+
+		for (long end = to; end > from; ) {
+			long start = Math.max(from, end - window.capacity());
+			window.clear().limit((int) (end - start));
+			while (window.hasRemaining()) {
+				if (channel.read(window, start + window.position()) < 0)
+					throw new IOException("File shrank while reading at offset " + (start + window.position()));
+			}
+
+			for (int i = (int) (end - start) - 1; i >= 0; --i) {
+				if (window.get(i) == '\n')
+					return start + i + 1;
+			}
+			end = start;
+		}
+		return from;
+	}
+
+	/*
+	 * Offset just past the first newline at or after position, or to if there is none
+	 */
+	private static long nextLineStart(FileChannel channel, long position, long to, ByteBuffer window) throws IOException {
+		if (position == 0)
+			return 0;
+
+		// The byte before a range start must be a newline; starting at position - 1 keeps a target already on a line start
+		long offset = position - 1;
+
+		while (offset < to) {
+			window.clear();
+			int read = channel.read(window, offset);
+			if (read <= 0)
+				break;
+
+			for (int i = 0; i < read; ++i) {
+				if (window.get(i) == '\n')
+					return offset + i + 1;
+			}
+			offset += read;
+		}
+		return to;
+	}
+
+	private static void visitLine(MappedByteBuffer buffer, int start, int end, LineVisitor visitor) {
+		if (end > start && buffer.get(end - 1) == '\r')
+			end--;
+		if (end > start)
+			visitor.visit(buffer, start, end);
+	}
+}
@@ -1,14 +1,42 @@
 package csv;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+public class Reader implements AutoCloseable {
+	/**
+	 * Header line of weatherHistory.csv, written back by exporters.
+	 */
+	public static final String CSV_HEADER = "Formatted Date,Summary,Precip Type,Temperature (C),Apparent Temperature (C),Humidity," +
+											"Wind Speed (km/h),Wind Bearing (degrees),Visibility (km),Loud Cover,Pressure (millibars),Daily Summary";
+
+	// parseLine is called once per line by streaming callers; keep the parser caches warm
+	private static final ThreadLocal<LineParser> LINE_PARSER = ThreadLocal.withInitial(LineParser::new);
+
+	// Ranges per thread for parallel loads, to even out uneven ranges; ranges stay above 1 MB
+	private static final int CHUNKS_PER_THREAD = 4;
+	private static final long MIN_CHUNK_BYTES = 1L << 20;
 
-public class Reader {
 	private String filePath;
-	private BufferedReader br;
+	private final List<RecordIterator> openIterators = new ArrayList<>();
+	private double errorBudget = 1.0;
+	private LoadReport lastReport;
 
 	public Reader() {}
 
@@ -16,54 +44,327 @@ public class Reader {
 		this.filePath = filePath;
 	}
 
-	public ArrayList<WeatherRecord> readWeatherRecord() {
+	/**
+	 * Largest fraction of malformed lines a load accepts; past it the load
+	 * returns no rows and its report is marked over budget. Defaults to 1, so
+	 * malformed lines are only skipped. Loads print nothing: callers report
+	 * rejected lines from getLastReport().
+	 */
+	public void setErrorBudget(double maxRejectedFraction) {
+		this.errorBudget = maxRejectedFraction;
+	}
+
+	/**
+	 * Report of the last load by this reader, or null before the first one.
+	 * Loads from a snapshot report their rows only.
+	 */
+	public LoadReport getLastReport() {
+		return lastReport;
+	}
+
+	public ArrayList<WeatherRecord> readWeatherRecord() throws IOException {
 		return readWeatherRecord(new File(filePath));
 	}
 
-	public ArrayList<WeatherRecord> readWeatherRecord(File file) {
+	/**
+	 * Loads every record of the file. The file is memory-mapped and each line
+	 * is parsed in place from its bytes.
+	 */
+	public ArrayList<WeatherRecord> readWeatherRecord(File file) throws IOException {
 		ArrayList<WeatherRecord> weatherRecords = new ArrayList<>();
+		LoadReport report = new LoadReport();
+		LineParser parser = new LineParser(report);
 
-		try (BufferedReader br = new BufferedReader(new FileReader(file))) {
-			this.br = br;
-			br.readLine();
+		MappedLines.forEach(file, true, (buffer, start, end) -> {
+			WeatherRecord record = parser.parse(buffer, start, end);
 
-			String line;
+			if (record != null)
+				weatherRecords.add(record);
+		});
 
-			while ((line = br.readLine()) != null) {
-				WeatherRecord record = parseLine(line);
+		return withinBudget(report) ? weatherRecords : new ArrayList<>();
+	}
+
+	public ArrayList<WeatherRecord> readWeatherRecord(int parallelism) throws IOException {
+		return readWeatherRecord(new File(filePath), parallelism);
+	}
+
+	/**
+	 * Loads every record on up to parallelism threads. The file is cut into
+	 * newline-aligned byte ranges, each range is parsed by its own worker and
+	 * the results are joined back in file order. Throws IOException if the file
+	 * cannot be read; nothing is returned from a partial load.
+	 */
+	public ArrayList<WeatherRecord> readWeatherRecord(File file, int parallelism) throws IOException {
+		LoadReport report = new LoadReport();
+		List<ArrayList<WeatherRecord>> chunks = readChunks(file, parallelism, report, (channel, from, to, chunkReport) -> {
+			ArrayList<WeatherRecord> records = new ArrayList<>();
+			LineParser parser = new LineParser(chunkReport);
+
+			MappedLines.forEach(channel, from, to, (buffer, start, end) -> {
+				WeatherRecord record = parser.parse(buffer, start, end);
 
 				if (record != null)
-					weatherRecords.add(record);
+					records.add(record);
+			});
+			return records;
+		});
+		if (!withinBudget(report))
+			return new ArrayList<>();
+
+		int total = 0;
+		for (ArrayList<WeatherRecord> chunk : chunks)
+			total += chunk.size();
+
+		ArrayList<WeatherRecord> weatherRecords = new ArrayList<>(total);
+		for (ArrayList<WeatherRecord> chunk : chunks)
+			weatherRecords.addAll(chunk);
+
+		return weatherRecords;
+	}
+
+	public WeatherColumnStore readColumns() throws IOException {
+		return readColumns(new File(filePath));
+	}
+
+	/**
+	 * Loads the file straight into a column store, without creating WeatherRecords.
+	 */
+	public WeatherColumnStore readColumns(File file) throws IOException {
+		// weatherHistory.csv averages a little over 100 bytes per row
+		WeatherColumnStore store = new WeatherColumnStore((int) Math.min(Integer.MAX_VALUE - 8, file.length() / 100 + 1));
+		LoadReport report = new LoadReport();
+		LineParser parser = new LineParser(report);
+
+		MappedLines.forEach(file, true, (buffer, start, end) -> parser.parseInto(buffer, start, end, store));
+		if (!withinBudget(report))
+			return new WeatherColumnStore();
+
+		store.compact();
+		return store;
+	}
+
+	/**
+	 * Column store counterpart of readWeatherRecord(File, int).
+	 */
+	public WeatherColumnStore readColumns(File file, int parallelism) throws IOException {
+		LoadReport report = new LoadReport();
+		List<WeatherColumnStore> chunks = readChunks(file, parallelism, report, (channel, from, to, chunkReport) -> {
+			WeatherColumnStore store = new WeatherColumnStore((int) Math.min(Integer.MAX_VALUE - 8, (to - from) / 100 + 1));
+			LineParser parser = new LineParser(chunkReport);
+
+			MappedLines.forEach(channel, from, to, (buffer, start, end) -> parser.parseInto(buffer, start, end, store));
+			return store;
+		});
+		if (!withinBudget(report))
+			return new WeatherColumnStore();
+
+		if (chunks.isEmpty())
+			return new WeatherColumnStore();
+
+		WeatherColumnStore store = chunks.get(0);
+		if (chunks.size() > 1) {
+			int total = 0;
+			for (WeatherColumnStore chunk : chunks)
+				total += chunk.size();
+
+			store = new WeatherColumnStore(total);
+			for (WeatherColumnStore chunk : chunks)
+				store.append(chunk);
+		}
+		store.compact();
+		return store;
+	}
+
+	public WeatherColumnStore readColumnsCached(int parallelism) throws IOException {
+		return readColumnsCached(new File(filePath), parallelism);
+	}
+
+	/**
+	 * Loads the file through its binary snapshot (see SnapshotFile), parsing the
+	 * CSV and writing a new snapshot only when there is none or it is out of date.
+	 * A load that fails, is over the error budget or finds no rows leaves the
+	 * snapshot alone, so a bad read is never served as valid data later. A
+	 * snapshot that cannot be written is noted in the report (see
+	 * LoadReport.getSnapshotError) and the load still succeeds.
+	 */
+	public WeatherColumnStore readColumnsCached(File file, int parallelism) throws IOException {
+		File snapshot = SnapshotFile.of(file);
+		WeatherColumnStore store = SnapshotFile.read(snapshot, file);
+		if (store != null) {
+			lastReport = LoadReport.ofRows(store.size());
+			return store;
+		}
+
+		store = readColumns(file, parallelism);
+		if (file.isFile() && !lastReport.isOverBudget() && store.size() > 0) {
+			try {
+				SnapshotFile.write(store, null, snapshot, file);
+			} catch (IOException e) {
+				lastReport.setSnapshotError("Could not write snapshot " + snapshot + ": " + e.getMessage());
 			}
-		} catch (IOException e) {
-			e.printStackTrace();
 		}
+		return store;
+	}
 
-		return weatherRecords;
+	/**
+	 * Loads a snapshot written by Exporter.writeSnapshot.
+	 */
+	public WeatherColumnStore readSnapshot(File snapshot) throws IOException {
+		WeatherColumnStore store = SnapshotFile.read(snapshot, null);
+		if (store == null)
+			throw new IOException("Not a valid weather snapshot: " + snapshot);
+		return store;
+	}
+
+	public LazyColumnFile readLazy() throws IOException {
+		return readLazy(new File(filePath));
+	}
+
+	/**
+	 * Opens the file for column-at-a-time parsing; see LazyColumnFile.
+	 */
+	public LazyColumnFile readLazy(File file) throws IOException {
+		return new LazyColumnFile(file);
+	}
+
+	public RecordIterator iterator() throws IOException {
+		return iterator(new File(filePath));
+	}
+
+	/**
+	 * Lazily parses the records of the file; see RecordIterator. Close it, or this
+	 * reader, if it is not read to the end.
+	 */
+	public RecordIterator iterator(File file) throws IOException {
+		RecordIterator iterator = new RecordIterator(file);
+
+		openIterators.removeIf(RecordIterator::isClosed);
+		openIterators.add(iterator);
+		return iterator;
 	}
 
-	private WeatherRecord parseLine(String line) {
-		try {
-			String[] datos = line.split(",");
-			return new WeatherRecord(
-				datos[0],
-				datos[1],
-				datos[2],
-				Double.parseDouble(datos[3]),
-				Double.parseDouble(datos[4]),
-				Double.parseDouble(datos[5]),
-				Double.parseDouble(datos[6]),
-				Double.parseDouble(datos[7]),
-				Double.parseDouble(datos[8]),
-				Double.parseDouble(datos[9]),
-				Double.parseDouble(datos[10]),
-				datos[11]
-			);
-		} catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
-			System.out.println("Error parsing line: " + line);
-			e.printStackTrace();
-			return null;
+	public Stream<WeatherRecord> stream() throws IOException {
+		return stream(new File(filePath));
+	}
+
+	/**
+	 * Sequential stream over the records of the file, parsed as they are consumed.
+	 * Use it in a try-with-resources block to release the file early.
+	 */
+	public Stream<WeatherRecord> stream(File file) throws IOException {
+		RecordIterator iterator = iterator(file);
+
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false)
+			.onClose(() -> {
+				try {
+					iterator.close();
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+	}
+
+	public void forEach(Consumer<? super WeatherRecord> action) throws IOException {
+		forEach(new File(filePath), action);
+	}
+
+	/**
+	 * Hands every record of the file to action in file order, without keeping any
+	 * of them; the file is memory-mapped and closed before this returns.
+	 */
+	public void forEach(File file, Consumer<? super WeatherRecord> action) throws IOException {
+		LoadReport report = new LoadReport();
+		LineParser parser = new LineParser(report);
+		lastReport = report;
+
+		MappedLines.forEach(file, true, (buffer, start, end) -> {
+			WeatherRecord record = parser.parse(buffer, start, end);
+
+			if (record != null)
+				action.accept(record);
+		});
+	}
+
+	/**
+	 * Parses one CSV data line; returns null if the line is malformed.
+	 */
+	public static WeatherRecord parseLine(String line) {
+		byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+		return LINE_PARSER.get().parse(bytes, 0, bytes.length);
+	}
+
+	/*
+	 * Runs loader over the data ranges of the file, in parallel when it is large
+	 * enough, and returns the per-range results in file order. A failed range fails
+	 * the whole load with its IOException
+	 */
+	private <T> List<T> readChunks(File file, int parallelism, LoadReport report, ChunkLoader<T> loader) throws IOException {
+		List<T> results = new ArrayList<>();
+
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			long from = MappedLines.firstLineEnd(channel);
+			long to = channel.size();
+
+			long parts = Math.min((long) Math.max(parallelism, 1) * CHUNKS_PER_THREAD, (to - from) / MIN_CHUNK_BYTES);
+			long[] bounds = MappedLines.split(channel, from, to, (int) Math.max(parts, 1));
+
+			if (bounds.length <= 2 || parallelism <= 1) {
+				results.add(loader.load(channel, from, to, report));
+				return results;
+			}
+
+			ExecutorService pool = Executors.newFixedThreadPool(Math.min(parallelism, bounds.length - 1));
+			try {
+				List<Future<T>> futures = new ArrayList<>();
+				List<LoadReport> reports = new ArrayList<>();
+				for (int i = 0; i + 1 < bounds.length; ++i) {
+					long start = bounds[i], end = bounds[i + 1];
+					LoadReport chunkReport = new LoadReport();
+					reports.add(chunkReport);
+					futures.add(pool.submit(() -> loader.load(channel, start, end, chunkReport)));
+				}
+
+				for (int i = 0; i < futures.size(); ++i) {
+					results.add(futures.get(i).get());
+					report.append(reports.get(i));
+				}
+			} finally {
+				pool.shutdownNow();
+			}
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof UncheckedIOException)
+				cause = cause.getCause();
+			if (cause instanceof IOException)
+				throw (IOException) cause;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new IOException(cause);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while reading " + file);
 		}
+
+		return results;
+	}
+
+	private interface ChunkLoader<T> {
+		T load(FileChannel channel, long from, long to, LoadReport report) throws IOException;
+	}
+
+	/*
+	 * Keeps report as the last one; false when it is over the error budget
+	 */
+	private boolean withinBudget(LoadReport report) {
+		lastReport = report;
+		if (report.getRejected() == 0)
+			return true;
+
+		report.setOverBudget(report.getRejectedFraction() > errorBudget);
+		return !report.isOverBudget();
 	}
 
 	public void displayRecords(ArrayList<WeatherRecord> weatherRecords) {
@@ -74,14 +375,18 @@ public class Reader {
 			System.out.println(record);
 	}
 
+	/**
+	 * Closes the iterators and streams opened by this reader that are still open.
+	 */
+	@Override
 	public void close() {
-		if (br != null) {
+		for (RecordIterator iterator : openIterators) {
 			try {
-				br.close();
-				br = null;
+				iterator.close();
 			} catch (IOException e) {
 				e.printStackTrace();
 			}
 		}
+		openIterators.clear();
 	}
 }
@@ -0,0 +1,150 @@
+package csv;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Lazily parses the records of a weather CSV, one line at a time.
+ *
+ * The file is read through a fixed window that only grows to fit the longest
+ * line, so memory use does not depend on the file size. Malformed lines are
+ * skipped like in Reader.readWeatherRecord and counted in getReport(). The
+ * file is closed when the last record has been returned, or earlier by close().
+ */
+public class RecordIterator implements Iterator<WeatherRecord>, Closeable {
+	private static final int WINDOW_SIZE = 1 << 16;
+
+	private final FileChannel channel;
+	private final LineParser parser = new LineParser();
+	private byte[] window = new byte[WINDOW_SIZE];
+	private int position;	// start of the next unread line
+	private int scanned;	// bytes before this offset are known not to be a newline
+	private int limit;		// end of the valid bytes in window
+	private int lineStart, lineEnd;
+	private boolean endOfFile;
+	private boolean closed;
+	private WeatherRecord next;
+
+	public RecordIterator(File file) throws IOException {
+		this(file, true);
+	}
+
+	public RecordIterator(File file, boolean skipHeader) throws IOException {
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+
+		try {
+			if (skipHeader)
+				nextLine();
+		} catch (IOException e) {
+			close();
+			throw e;
+		}
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (next != null)
+			return true;
+		if (closed)
+			return false;
+
+		try {
+			while (nextLine()) {
+				next = parser.parse(window, lineStart, lineEnd);
+				if (next != null)
+					return true;
+			}
+			close();
+			return false;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public WeatherRecord next() {
+		if (!hasNext())
+			throw new NoSuchElementException();
+
+		WeatherRecord record = next;
+		next = null;
+		return record;
+	}
+
+	/**
+	 * Lines read so far and the malformed ones among them.
+	 */
+	public LoadReport getReport() {
+		return parser.getReport();
+	}
+
+	public boolean isClosed() {
+		return closed;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (!closed) {
+			closed = true;
+			window = null;
+			channel.close();
+		}
+	}
+
+	/*
+	 * Moves [lineStart, lineEnd) to the next non-empty line; returns false at end of file
+	 */
+	private boolean nextLine() throws IOException {
+		while (true) {
+			for (int i = scanned; i < limit; ++i) {
+				if (window[i] == '\n' && setLine(position, i, i + 1))
+					return true;
+			}
+			scanned = limit;
+
+			if (endOfFile) {
+				// Last line without a terminator
+				return position < limit && setLine(position, limit, limit);
+			}
+			fill();
+		}
+	}
+
+	private boolean setLine(int start, int end, int following) {
+		position = scanned = following;
+
+		if (end > start && window[end - 1] == '\r')
+			end--;
+		lineStart = start;
+		lineEnd = end;
+		return end > start;
+	}
+
+	/*
+	 * Moves the unread bytes to the front of the window and reads more after them
+	 */
+	private void fill() throws IOException {
+		if (position > 0) {
+			System.arraycopy(window, position, window, 0, limit - position);
+			limit -= position;
+			scanned -= position;
+			position = 0;
+		}
+		if (limit == window.length)
+			window = Arrays.copyOf(window, 2 * window.length);
+
+		int read = channel.read(ByteBuffer.wrap(window, limit, window.length - limit));
+		if (read < 0)
+			endOfFile = true;
+		else
+			limit += read;
+	}
+}
@@ -0,0 +1,295 @@
+package csv;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+import csv.WeatherRecord.WeatherField;
+
+/**
+ * Binary columnar snapshot of a WeatherColumnStore, written next to the CSV it
+ * was loaded from so later starts can skip parsing, or exported on its own.
+ *
+ * Layout, little-endian:
+ *   header   magic, version, field count, source size, source mtime, rows (64 bytes);
+ *            the source size is -1 in exported snapshots
+ *   columns  in WeatherField order; numeric fields as rows doubles, encoded
+ *            text fields as dictionary size, dictionary byte length, the
+ *            dictionary as strings, then rows int codes; FORMATTED_DATE as
+ *            byte length and rows strings. A string is a (length, UTF-8 bytes)
+ *            pair padded to 4 bytes, length -1 for null
+ *   dates    rows longs, the formatted dates as epoch milliseconds
+ *   trailer  CRC32 of everything before it, as a long
+ *
+ * A snapshot is only used while the source CSV keeps the size and modification
+ * time recorded in its header and the checksum matches.
+ *
+ * Sections are mapped and then copied into heap arrays on purpose. The
+ * columns are handed out as double[], int[] and long[], which the sorts
+ * index directly and which a mapped buffer cannot stand in for; the store
+ * grows when followed rows are appended, which read-only mappings cannot;
+ * and the checksum has to read every byte before any of it is trusted, so
+ * the copy is one bulk pass over pages that are already resident.
+ */
+class SnapshotFile {
+	static final String EXTENSION = ".snapshot";
+
+	private static final long MAGIC = 0x504E534854414557L;	// "WEATHSNP" read as a little-endian long
+	private static final int VERSION = 4;
+	private static final int HEADER_SIZE = 64;
+	private static final int TRAILER_SIZE = 8;
+	private static final int WRITE_BUFFER = 1 << 20;
+	private static final WeatherField[] FIELDS = WeatherField.values();
+
+	private SnapshotFile() {}
+
+	static File of(File source) {
+		return new File(source.getPath() + EXTENSION);
+	}
+
+	/*
+	 * Loads the snapshot of source, or an exported snapshot when source is null;
+	 * returns null when it is missing, stale or corrupt
+	 */
+	static WeatherColumnStore read(File snapshot, File source) {
+		if (!snapshot.isFile())
+			return null;
+
+		try (FileChannel channel = FileChannel.open(snapshot.toPath(), StandardOpenOption.READ)) {
+			long length = channel.size();
+			if (length < HEADER_SIZE + TRAILER_SIZE)
+				return null;
+
+			CRC32 crc = new CRC32();
+			ByteBuffer header = map(channel, 0, HEADER_SIZE, crc);
+			if (header.getLong() != MAGIC || header.getInt() != VERSION || header.getInt() != FIELDS.length)
+				return null;
+			long sourceLength = header.getLong(), sourceModified = header.getLong();
+			if (source == null ? sourceLength != -1 : sourceLength != source.length() || sourceModified != source.lastModified())
+				return null;
+
+			int rows = header.getInt();
+			long position = HEADER_SIZE;
+			double[][] numeric = new double[FIELDS.length][];
+			String[][] dictionaries = new String[FIELDS.length][];
+			int[][] codes = new int[FIELDS.length][];
+			String[] dates = null;
+
+			for (int f = 0; f < FIELDS.length; ++f) {
+				if (WeatherColumnStore.isNumeric(FIELDS[f])) {
+					numeric[f] = new double[rows];
+					map(channel, position, 8L * rows, crc).asDoubleBuffer().get(numeric[f]);
+					position += 8L * rows;
+					continue;
+				}
+				if (!WeatherColumnStore.isEncoded(FIELDS[f])) {
+					long dateBytes = map(channel, position, 8, crc).getLong();
+					position += 8;
+					dates = getStrings(map(channel, position, dateBytes, crc), rows);
+					position += dateBytes;
+					continue;
+				}
+
+				ByteBuffer counts = map(channel, position, 12, crc);
+				int count = counts.getInt();
+				long dictionaryBytes = counts.getLong();
+				position += 12;
+
+				dictionaries[f] = getStrings(map(channel, position, dictionaryBytes, crc), count);
+				position += dictionaryBytes;
+
+				codes[f] = new int[rows];
+				map(channel, position, 4L * rows, crc).asIntBuffer().get(codes[f]);
+				position += 4L * rows;
+			}
+
+			long[] epochMillis = new long[rows];
+			map(channel, position, 8L * rows, crc).asLongBuffer().get(epochMillis);
+			position += 8L * rows;
+
+			if (position + TRAILER_SIZE != length || map(channel, position, TRAILER_SIZE, null).getLong() != crc.getValue())
+				return null;
+
+			return WeatherColumnStore.wrap(rows, numeric, dictionaries, codes, dates, epochMillis);
+		} catch (IOException | RuntimeException e) {
+			// Truncated or foreign file: fall back to the CSV, which rewrites it
+			return null;
+		}
+	}
+
+	/*
+	 * Writes the rows of columns, in order or their own order when it is null, as
+	 * the snapshot of source or as an exported snapshot when source is null.
+	 * Any previous file is replaced atomically.
+	 */
+	static void write(WeatherColumns columns, int[] order, File snapshot, File source) throws IOException {
+		Exporter.write(snapshot, channel -> {
+			Output out = new Output(channel);
+			int rows = order == null ? columns.size() : order.length;
+
+			out.putLong(MAGIC);
+			out.putInt(VERSION);
+			out.putInt(FIELDS.length);
+			out.putLong(source == null ? -1 : source.length());
+			out.putLong(source == null ? 0 : source.lastModified());
+			out.putInt(rows);
+			out.pad(HEADER_SIZE - 36);
+
+			for (WeatherField field : FIELDS) {
+				if (WeatherColumnStore.isNumeric(field)) {
+					double[] column = columns.getColumn(field);
+					for (int i = 0; i < rows; ++i)
+						out.putDouble(column[order == null ? i : order[i]]);
+					continue;
+				}
+				if (!WeatherColumnStore.isEncoded(field)) {
+					byte[][] values = new byte[rows][];
+					for (int i = 0; i < rows; ++i)
+						values[i] = utf8(columns.getString(field, order == null ? i : order[i]));
+					out.putLong(stringBytes(values));
+					putStrings(out, values);
+					continue;
+				}
+
+				int count = columns.getCardinality(field);
+				byte[][] values = new byte[count][];
+				for (int code = 0; code < count; ++code)
+					values[code] = utf8(columns.decode(field, code));
+
+				out.putInt(count);
+				out.putLong(stringBytes(values));
+				putStrings(out, values);
+
+				int[] codes = columns.getCodes(field);
+				for (int i = 0; i < rows; ++i)
+					out.putInt(codes[order == null ? i : order[i]]);
+			}
+
+			long[] epochMillis = columns.getEpochMillis();
+			for (int i = 0; i < rows; ++i)
+				out.putLong(epochMillis[order == null ? i : order[i]]);
+
+			out.flush();
+			out.putLong(out.crc.getValue());
+			out.flush();
+		});
+	}
+
+	private static int align(int offset) {
+		return (offset + 3) & ~3;
+	}
+
+	private static byte[] utf8(String value) {
+		return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+	}
+
+	/*
+	 * Size of values written as strings, padding included
+	 */
+	private static long stringBytes(byte[][] values) {
+		long bytes = 0;
+		for (byte[] value : values)
+			bytes += align(4 + (value == null ? 0 : value.length));
+		return bytes;
+	}
+
+	private static void putStrings(Output out, byte[][] values) throws IOException {
+		for (byte[] value : values) {
+			if (value == null) {
+				out.putInt(-1);
+				continue;
+			}
+			out.putInt(value.length);
+			out.put(value);
+			out.pad(align(value.length) - value.length);
+		}
+	}
+
+	private static String[] getStrings(ByteBuffer buffer, int count) {
+		String[] values = new String[count];
+		for (int i = 0; i < count; ++i) {
+			int valueLength = buffer.getInt();
+			if (valueLength < 0)
+				continue;	// null, already aligned
+
+			byte[] bytes = new byte[valueLength];
+			buffer.get(bytes);
+			values[i] = new String(bytes, StandardCharsets.UTF_8);
+			buffer.position(align(buffer.position()));
+		}
+		return values;
+	}
+
+	private static ByteBuffer map(FileChannel channel, long position, long size, CRC32 crc) throws IOException {
+		if (size > Integer.MAX_VALUE)
+			throw new IOException("Snapshot section too large: " + size + " bytes");
+
+		MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+		if (crc != null)
+			crc.update(buffer.duplicate());
+		return buffer.order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/*
+	 * Buffered channel writer that keeps a running CRC32 of what it flushes
+	 */
+	private static class Output {
+		private final FileChannel channel;
+		private final ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER).order(ByteOrder.LITTLE_ENDIAN);
+		private final CRC32 crc = new CRC32();
+
+		Output(FileChannel channel) {
+			this.channel = channel;
+		}
+
+		void putInt(int value) throws IOException {
+			ensure(4);
+			buffer.putInt(value);
+		}
+
+		void putLong(long value) throws IOException {
+			ensure(8);
+			buffer.putLong(value);
+		}
+
+		void putDouble(double value) throws IOException {
+			ensure(8);
+			buffer.putDouble(value);
+		}
+
+		void put(byte[] bytes) throws IOException {
+			for (int offset = 0; offset < bytes.length; ) {
+				ensure(1);
+				int length = Math.min(buffer.remaining(), bytes.length - offset);
+				buffer.put(bytes, offset, length);
+				offset += length;
+			}
+		}
+
+		void pad(int count) throws IOException {
+			for (int i = 0; i < count; ++i) {
+				ensure(1);
+				buffer.put((byte) 0);
+			}
+		}
+
+		void flush() throws IOException {
+			buffer.flip();
+			crc.update(buffer.duplicate());
+			while (buffer.hasRemaining())
+				channel.write(buffer);
+			buffer.clear();
+		}
+
+		private void ensure(int bytes) throws IOException {
+			if (buffer.remaining() < bytes)
+				flush();
+		}
+	}
+}
@@ -0,0 +1,128 @@
+package csv;
+
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Parses the "Formatted Date" timestamps of weatherHistory.csv, such as
+ * "2006-04-01 00:00:00.000 +0200".
+ *
+ * The fixed layout is read digit by digit without allocating; anything else
+ * falls back to a DateTimeFormatter with the same pattern. Timestamps are
+ * compared as epoch milliseconds, so rows with different UTC offsets are
+ * ordered by the instant they describe.
+ */
+public class Timestamps {
+	/**
+	 * Epoch value of a timestamp that could not be parsed; sorts before every valid one.
+	 */
+	public static final long INVALID = Long.MIN_VALUE;
+
+	private static final String PATTERN = "yyyy-MM-dd HH:mm:ss.SSS Z";
+	private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern(PATTERN);
+	private static final int LENGTH = 29;	// PATTERN with Z printed as +hhmm
+	private static final long MILLIS_PER_DAY = 86_400_000L;
+
+	private Timestamps() {}
+
+	/*
+	 * Epoch milliseconds of the instant, or INVALID
+	 */
+	public static long parseEpochMillis(String text) {
+		if (!isFixedLayout(text))
+			return slowParse(text, true);
+
+		int year = digits(text, 0, 4), month = digits(text, 5, 2), day = digits(text, 8, 2);
+		int hour = digits(text, 11, 2), minute = digits(text, 14, 2), second = digits(text, 17, 2);
+		int millis = digits(text, 20, 3);
+		int offsetMinutes = digits(text, 25, 2) * 60 + digits(text, 27, 2);
+		if (text.charAt(24) == '-')
+			offsetMinutes = -offsetMinutes;
+
+		if (!isValidDate(year, month, day) || hour > 23 || minute > 59 || second > 59)
+			return slowParse(text, true);
+
+		long local = epochDay(year, month, day) * MILLIS_PER_DAY + ((hour * 60L + minute) * 60 + second) * 1000 + millis;
+		return local - offsetMinutes * 60_000L;
+	}
+
+	/*
+	 * Local date of the timestamp, in its own offset, packed as yyyyMMdd; 0 if it cannot be parsed
+	 */
+	public static int parseLocalDate(String text) {
+		if (isFixedLayout(text)) {
+			int year = digits(text, 0, 4), month = digits(text, 5, 2), day = digits(text, 8, 2);
+			if (isValidDate(year, month, day))
+				return year * 10000 + month * 100 + day;
+		}
+		return (int) slowParse(text, false);
+	}
+
+	/*
+	 * Days since 1970-01-01 of a proleptic Gregorian date (Howard Hinnant's days_from_civil)
+	 */
+	static long epochDay(int year, int month, int day) {
+		int y = month <= 2 ? year - 1 : year;
+		int era = (y >= 0 ? y : y - 399) / 400;
+		int yearOfEra = y - era * 400;
+		int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+		int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+		return era * 146097L + dayOfEra - 719468;
+	}
+
+	/*
+	 * Private helper methods
+	 */
+	private static boolean isFixedLayout(String text) {
+		if (text == null || text.length() != LENGTH)
+			return false;
+
+		for (int i = 0; i < LENGTH; ++i) {
+			char c = text.charAt(i);
+			boolean ok = switch (i) {
+				case 4, 7 -> c == '-';
+				case 10, 23 -> c == ' ';
+				case 13, 16 -> c == ':';
+				case 19 -> c == '.';
+				case 24 -> c == '+' || c == '-';
+				default -> c >= '0' && c <= '9';
+			};
+			if (!ok)
+				return false;
+		}
+		return true;
+	}
+
+	private static int digits(String text, int from, int count) {
+		int value = 0;
+		for (int i = from; i < from + count; ++i)
+			value = value * 10 + (text.charAt(i) - '0');
+		return value;
+	}
+
+	private static boolean isValidDate(int year, int month, int day) {
+		if (month < 1 || month > 12 || day < 1)
+			return false;
+
+		int days = switch (month) {
+			case 2 -> (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0)) ? 29 : 28;
+			case 4, 6, 9, 11 -> 30;
+			default -> 31;
+		};
+		return day <= days;
+	}
+
+	private static long slowParse(String text, boolean epoch) {
+		if (text == null)
+			return epoch ? INVALID : 0;
+
+		try {
+			ZonedDateTime dateTime = ZonedDateTime.parse(text, FORMATTER);
+			return epoch ? dateTime.toInstant().toEpochMilli()
+				: dateTime.getYear() * 10000 + dateTime.getMonthValue() * 100 + dateTime.getDayOfMonth();
+		} catch (DateTimeParseException e) {
+			return epoch ? INVALID : 0;
+		}
+	}
+}
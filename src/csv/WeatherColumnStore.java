@@ -0,0 +1,374 @@
+package csv;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import csv.WeatherRecord.WeatherField;
+
+/**
+ * Struct-of-arrays view of a weather dataset.
+ *
+ * Every numeric WeatherField is kept in its own double[] and the repetitive
+ * text fields (see isEncoded) are dictionary-encoded into an int[] of codes, so
+ * sorting and charting touch contiguous primitive memory instead of chasing one
+ * WeatherRecord per row. Dictionary codes follow the alphabetical order of
+ * their values (nulls last), so text fields sort by comparing, or counting,
+ * codes. FORMATTED_DATE is nearly unique per row, so it is kept as epoch
+ * milliseconds for sorting and querying plus the original strings for display.
+ * Rows are addressed by their load order; sorts return an int[] permutation of
+ * row indices instead of reordering the store.
+ *
+ * Rows are added on one thread, which then calls compact() before the store is
+ * read anywhere else. Reads never modify the store, so any number of threads
+ * can read it until rows are added again.
+ */
+public class WeatherColumnStore implements WeatherColumns {
+	private static final WeatherField[] FIELDS = WeatherField.values();
+	private static final int DEFAULT_CAPACITY = 1024;
+
+	private final double[][] numeric = new double[FIELDS.length][];
+	private final EncodedColumn[] text = new EncodedColumn[FIELDS.length];
+	private long[] epochMillis;	// FORMATTED_DATE parsed once, see Timestamps
+	private String[] dates;		// FORMATTED_DATE as read
+	private int size;
+
+	public WeatherColumnStore() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	public WeatherColumnStore(int capacity) {
+		this(Math.max(capacity, 1), true);
+	}
+
+	/**
+	 * Builds a store holding the given records in list order.
+	 */
+	public static WeatherColumnStore of(List<WeatherRecord> records) {
+		WeatherColumnStore store = new WeatherColumnStore(records.size());
+		for (WeatherRecord record : records)
+			store.add(record);
+		store.compact();
+		return store;
+	}
+
+	/*
+	 * Store over already built columns, indexed by WeatherField ordinal; used by SnapshotFile.
+	 * Encoded fields take their dictionary and codes, numeric fields their values.
+	 */
+	static WeatherColumnStore wrap(int size, double[][] numeric, String[][] dictionaries, int[][] codes,
+								   String[] dates, long[] epochMillis) {
+		WeatherColumnStore store = new WeatherColumnStore(0, false);
+		store.dates = dates;
+		store.epochMillis = epochMillis;
+
+		for (int f = 0; f < FIELDS.length; ++f) {
+			if (isNumeric(FIELDS[f]))
+				store.numeric[f] = numeric[f];
+			else if (isEncoded(FIELDS[f]))
+				store.text[f] = new EncodedColumn(codes[f], dictionaries[f]);
+		}
+		store.size = size;
+		return store;
+	}
+
+	private WeatherColumnStore(int capacity, boolean allocate) {
+		if (allocate) {
+			epochMillis = new long[capacity];
+			dates = new String[capacity];
+			for (WeatherField field : FIELDS) {
+				if (isNumeric(field))
+					numeric[field.ordinal()] = new double[capacity];
+				else if (isEncoded(field))
+					text[field.ordinal()] = new EncodedColumn(capacity);
+			}
+		}
+	}
+
+	/**
+	 * Materializes every row as a WeatherRecord, in row order.
+	 */
+	public ArrayList<WeatherRecord> toRecords() {
+		ArrayList<WeatherRecord> records = new ArrayList<>(size);
+		for (int row = 0; row < size; ++row)
+			records.add(getRecord(row));
+		return records;
+	}
+
+	/**
+	 * Returns true for the fields stored as double columns.
+	 */
+	public static boolean isNumeric(WeatherField field) {
+		return switch (field) {
+			case FORMATTED_DATE, SUMMARY, PRECIP_TYPE, DAILY_SUMMARY -> false;
+			default -> true;
+		};
+	}
+
+	/**
+	 * Returns true for the text fields stored as dictionary codes, which
+	 * getCodes, getCardinality and decode accept: every text field but
+	 * FORMATTED_DATE.
+	 */
+	public static boolean isEncoded(WeatherField field) {
+		return !isNumeric(field) && field != WeatherField.FORMATTED_DATE;
+	}
+
+	public void add(WeatherRecord record) {
+		addRow(record.getFormattedDate(), record.getSummary(), record.getPrecipType(),
+			   record.getTemperature(), record.getApparentTemperature(), record.getHumidity(),
+			   record.getWindSpeed(), record.getWindBearing(), record.getVisibility(),
+			   record.getLoudCover(), record.getPressure(), record.getDailySummary());
+	}
+
+	/**
+	 * Appends one row from its field values, without building a WeatherRecord.
+	 */
+	public void addRow(String formattedDate, String summary, String precipType, double temperature,
+					   double apparentTemperature, double humidity, double windSpeed, double windBearing,
+					   double visibility, double loudCover, double pressure, String dailySummary) {
+		ensureCapacity(size + 1);
+
+		numeric[WeatherField.TEMPERATURE.ordinal()][size]			= temperature;
+		numeric[WeatherField.APPARENT_TEMPERATURE.ordinal()][size]	= apparentTemperature;
+		numeric[WeatherField.HUMIDITY.ordinal()][size]				= humidity;
+		numeric[WeatherField.WIND_SPEED.ordinal()][size]			= windSpeed;
+		numeric[WeatherField.WIND_BEARING.ordinal()][size]			= windBearing;
+		numeric[WeatherField.VISIBILITY.ordinal()][size]			= visibility;
+		numeric[WeatherField.CLOUD_COVER.ordinal()][size]			= loudCover;
+		numeric[WeatherField.PRESSURE.ordinal()][size]				= pressure;
+
+		text[WeatherField.SUMMARY.ordinal()].add(size, summary);
+		text[WeatherField.PRECIP_TYPE.ordinal()].add(size, precipType);
+		text[WeatherField.DAILY_SUMMARY.ordinal()].add(size, dailySummary);
+		dates[size] = formattedDate;
+		epochMillis[size] = Timestamps.parseEpochMillis(formattedDate);
+
+		size++;
+	}
+
+	/**
+	 * Appends every row of another store, after the rows already held. Like
+	 * add, it leaves the store to be compacted.
+	 */
+	public void append(WeatherColumnStore other) {
+		ensureCapacity(size + other.size);
+		System.arraycopy(other.epochMillis, 0, epochMillis, size, other.size);
+		System.arraycopy(other.dates, 0, dates, size, other.size);
+
+		for (int f = 0; f < FIELDS.length; ++f) {
+			if (numeric[f] != null) {
+				System.arraycopy(other.numeric[f], 0, numeric[f], size, other.size);
+			} else if (text[f] != null) {
+				// Translate the other dictionary into this one, then remap its codes
+				EncodedColumn source = other.text[f];
+				int[] codeMap = new int[source.dictionary.size()];
+				for (int code = 0; code < codeMap.length; ++code)
+					codeMap[code] = text[f].encode(source.dictionary.get(code));
+
+				int[] codes = text[f].codes;
+				for (int row = 0; row < other.size; ++row)
+					codes[size + row] = codeMap[source.codes[row]];
+			}
+		}
+
+		size += other.size;
+	}
+
+	/**
+	 * Renumbers every dictionary into value order and trims every column to
+	 * size(), once rows have been added. Renumbered codes go to new arrays, so
+	 * columns handed out before are left as they were.
+	 */
+	public void compact() {
+		if (epochMillis.length != size) {
+			epochMillis = Arrays.copyOf(epochMillis, size);
+			dates = Arrays.copyOf(dates, size);
+		}
+		for (int f = 0; f < FIELDS.length; ++f) {
+			if (numeric[f] != null && numeric[f].length != size)
+				numeric[f] = Arrays.copyOf(numeric[f], size);
+			else if (text[f] != null)
+				text[f].compact(size);
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the backing column of a numeric field, which is trimmed to size()
+	 * once the store is compacted.
+	 */
+	public double[] getColumn(WeatherField field) {
+		double[] column = numericColumn(field);
+		return column.length == size ? column : Arrays.copyOf(column, size);
+	}
+
+	/**
+	 * Returns the dictionary codes of a text field, trimmed to size().
+	 * Codes are in [0, getCardinality) and ordered like the values they stand for.
+	 * Throws IllegalStateException when rows were added since the last compact().
+	 */
+	public int[] getCodes(WeatherField field) {
+		EncodedColumn column = sortedColumn(field);
+		return column.codes.length == size ? column.codes : Arrays.copyOf(column.codes, size);
+	}
+
+	/**
+	 * Number of distinct values seen in a text field.
+	 */
+	public int getCardinality(WeatherField field) {
+		return textColumn(field).dictionary.size();
+	}
+
+	public String decode(WeatherField field, int code) {
+		return sortedColumn(field).dictionary.get(code);
+	}
+
+	/**
+	 * FORMATTED_DATE as epoch milliseconds (Timestamps.INVALID if unparsable), trimmed to size().
+	 * Sorting this column orders rows by instant, whatever their UTC offset.
+	 */
+	public long[] getEpochMillis() {
+		return epochMillis.length == size ? epochMillis : Arrays.copyOf(epochMillis, size);
+	}
+
+	public long getEpochMillis(int row) {
+		return epochMillis[row];
+	}
+
+	public double getDouble(WeatherField field, int row) {
+		return numericColumn(field)[row];
+	}
+
+	public String getString(WeatherField field, int row) {
+		if (field == WeatherField.FORMATTED_DATE)
+			return dates[row];
+		EncodedColumn column = textColumn(field);
+		return column.dictionary.get(column.codes[row]);
+	}
+
+	/*
+	 * Private helper methods
+	 */
+	private double[] numericColumn(WeatherField field) {
+		double[] column = numeric[field.ordinal()];
+		if (column == null)
+			throw new IllegalArgumentException("Not a numeric field: " + field);
+		return column;
+	}
+
+	private EncodedColumn textColumn(WeatherField field) {
+		EncodedColumn column = text[field.ordinal()];
+		if (column == null)
+			throw new IllegalArgumentException("Not a dictionary-encoded field: " + field);
+		return column;
+	}
+
+	private EncodedColumn sortedColumn(WeatherField field) {
+		EncodedColumn column = textColumn(field);
+		if (!column.sorted)
+			throw new IllegalStateException("Rows were added to " + field + " since the store was compacted");
+		return column;
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (epochMillis.length < capacity)
+			epochMillis = Arrays.copyOf(epochMillis, grow(epochMillis.length, capacity));
+		if (dates.length < capacity)
+			dates = Arrays.copyOf(dates, grow(dates.length, capacity));
+		for (int f = 0; f < FIELDS.length; ++f) {
+			if (numeric[f] != null && numeric[f].length < capacity)
+				numeric[f] = Arrays.copyOf(numeric[f], grow(numeric[f].length, capacity));
+			else if (text[f] != null && text[f].codes.length < capacity)
+				text[f].codes = Arrays.copyOf(text[f].codes, grow(text[f].codes.length, capacity));
+		}
+	}
+
+	private static int grow(int current, int required) {
+		return Math.max(required, current + (current >> 1));
+	}
+
+	/*
+	 * Text column stored as one int code per row plus a dictionary of distinct values.
+	 * New values get the next code; compact renumbers the codes into value
+	 * order, which only costs a pass when a value arrived out of order.
+	 */
+	private static class EncodedColumn {
+		private int[] codes;
+		private ArrayList<String> dictionary;
+		private HashMap<String, Integer> lookup;
+		private boolean sorted = true;
+
+		EncodedColumn(int capacity) {
+			codes = new int[capacity];
+			dictionary = new ArrayList<>();
+			lookup = new HashMap<>();
+		}
+
+		EncodedColumn(int[] codes, String[] values) {
+			this.codes = codes;
+			this.dictionary = new ArrayList<>(Arrays.asList(values));
+			for (int code = 1; code < values.length && sorted; ++code)
+				sorted = TEXT_ORDER.compare(values[code - 1], values[code]) < 0;
+		}
+
+		void add(int row, String value) {
+			codes[row] = encode(value);
+		}
+
+		int encode(String value) {
+			// Built on first use, so loaded snapshots that are never appended to skip it
+			if (lookup == null) {
+				lookup = new HashMap<>(dictionary.size() * 2);
+				for (int code = 0; code < dictionary.size(); ++code)
+					lookup.put(dictionary.get(code), code);
+			}
+
+			Integer code = lookup.get(value);
+			if (code == null) {
+				code = dictionary.size();
+				if (sorted && code > 0 && TEXT_ORDER.compare(dictionary.get(code - 1), value) > 0)
+					sorted = false;
+				dictionary.add(value);
+				lookup.put(value, code);
+			}
+			return code;
+		}
+
+		/*
+		 * Trims the codes to size and renumbers them in value order, into new arrays
+		 */
+		void compact(int size) {
+			if (sorted) {
+				if (codes.length != size)
+					codes = Arrays.copyOf(codes, size);
+				return;
+			}
+
+			Integer[] byValue = new Integer[dictionary.size()];
+			for (int code = 0; code < byValue.length; ++code)
+				byValue[code] = code;
+			Arrays.sort(byValue, (a, b) -> TEXT_ORDER.compare(dictionary.get(a), dictionary.get(b)));
+
+			int[] newCode = new int[byValue.length];
+			ArrayList<String> values = new ArrayList<>(byValue.length);
+			for (int rank = 0; rank < byValue.length; ++rank) {
+				newCode[byValue[rank]] = rank;
+				values.add(dictionary.get(byValue[rank]));
+			}
+
+			int[] renumbered = new int[size];
+			for (int row = 0; row < size; ++row)
+				renumbered[row] = newCode[codes[row]];
+
+			codes = renumbered;
+			dictionary = values;
+			lookup = null;
+			sorted = true;
+		}
+	}
+}
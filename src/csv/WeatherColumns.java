@@ -0,0 +1,76 @@
+package csv;
+
+import java.util.Comparator;
+
+import csv.WeatherRecord.WeatherField;
+
+/**
+ * Read access to a weather dataset by column.
+ *
+ * Rows are addressed by their position in the source file. Numeric fields
+ * (see WeatherColumnStore.isNumeric) are read as doubles, FORMATTED_DATE as
+ * epoch milliseconds and the other text fields (see WeatherColumnStore.isEncoded)
+ * as dictionary codes ordered like their values, so sorts work on primitive
+ * arrays and return row permutations.
+ */
+public interface WeatherColumns {
+	/**
+	 * Order of text values: natural order, with missing values (null) last.
+	 * Dictionary codes follow it and every text sort uses it.
+	 */
+	Comparator<String> TEXT_ORDER = Comparator.nullsLast(Comparator.naturalOrder());
+
+	int size();
+
+	/**
+	 * Values of a numeric field, one per row. The array must not be modified.
+	 */
+	double[] getColumn(WeatherField field);
+
+	/**
+	 * Dictionary codes of an encoded text field, one per row, in [0, getCardinality)
+	 * and ordered like the values they stand for. The array must not be modified.
+	 */
+	int[] getCodes(WeatherField field);
+
+	int getCardinality(WeatherField field);
+
+	String decode(WeatherField field, int code);
+
+	/**
+	 * FORMATTED_DATE as epoch milliseconds, Timestamps.INVALID where unparsable.
+	 * The array must not be modified.
+	 */
+	long[] getEpochMillis();
+
+	double getDouble(WeatherField field, int row);
+
+	String getString(WeatherField field, int row);
+
+	/**
+	 * Boxed cell value, used by table models.
+	 */
+	default Object getValue(WeatherField field, int row) {
+		return WeatherColumnStore.isNumeric(field) ? (Object) getDouble(field, row) : getString(field, row);
+	}
+
+	/**
+	 * Materializes one row as a WeatherRecord.
+	 */
+	default WeatherRecord getRecord(int row) {
+		return new WeatherRecord(
+			getString(WeatherField.FORMATTED_DATE, row),
+			getString(WeatherField.SUMMARY, row),
+			getString(WeatherField.PRECIP_TYPE, row),
+			getDouble(WeatherField.TEMPERATURE, row),
+			getDouble(WeatherField.APPARENT_TEMPERATURE, row),
+			getDouble(WeatherField.HUMIDITY, row),
+			getDouble(WeatherField.WIND_SPEED, row),
+			getDouble(WeatherField.WIND_BEARING, row),
+			getDouble(WeatherField.VISIBILITY, row),
+			getDouble(WeatherField.CLOUD_COVER, row),
+			getDouble(WeatherField.PRESSURE, row),
+			getString(WeatherField.DAILY_SUMMARY, row)
+		);
+	}
+}
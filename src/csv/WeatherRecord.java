@@ -1,10 +1,5 @@
 package csv;
 
-import java.time.ZonedDateTime;
-import java.time.format.DateTimeFormatter;
-import java.time.format.DateTimeParseException;
-
-
 public class WeatherRecord {
 	private String formattedDate;
 	private String summary;
@@ -18,6 +13,8 @@ public class WeatherRecord {
 	private double loudCover;
 	private double pressure;
 	private String dailySummary;
+	private long epochMillis = Timestamps.INVALID;	// formattedDate parsed once, see Timestamps
+	private int localDate;							// yyyyMMdd in the record's own offset, 0 if unparsable
 
 	public static enum WeatherField {
 		FORMATTED_DATE,
@@ -51,6 +48,8 @@ public class WeatherRecord {
 		this.loudCover				= loudCover;
 		this.pressure				= pressure;
 		this.dailySummary			= dailySummary;
+		this.epochMillis			= Timestamps.parseEpochMillis(formattedDate);
+		this.localDate				= Timestamps.parseLocalDate(formattedDate);
 	}
 
 	public String getFormattedDate() { return formattedDate; }
@@ -66,21 +65,76 @@ public class WeatherRecord {
 	public double getPressure() { return pressure; }
 	public String getDailySummary() { return dailySummary; }
 
-    /**
-     * Extracts the year from the formatted date string.
-     * 
-     * @return The year as an integer, or -1 if the date parsing fails.
-     */
-    public int getYear() {
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS Z");
-        try {
-            ZonedDateTime dateTime = ZonedDateTime.parse(this.formattedDate, formatter);
-            return dateTime.getYear();
-        } catch (DateTimeParseException e) {
-            // Handle parsing exceptions if necessary
-            return -1; // Return -1 if the date format is invalid or cannot be parsed
-        }
-    }
+	/**
+	 * Value of a numeric field (see WeatherColumnStore.isNumeric).
+	 */
+	public double getDouble(WeatherField field) {
+		return switch (field) {
+			case TEMPERATURE -> temperature;
+			case APPARENT_TEMPERATURE -> apparentTemperature;
+			case HUMIDITY -> humidity;
+			case WIND_SPEED -> windSpeed;
+			case WIND_BEARING -> windBearing;
+			case VISIBILITY -> visibility;
+			case CLOUD_COVER -> loudCover;
+			case PRESSURE -> pressure;
+			default -> throw new IllegalArgumentException("Not a numeric field: " + field);
+		};
+	}
+
+	/**
+	 * Instant of formattedDate in epoch milliseconds, or Timestamps.INVALID.
+	 */
+	public long getEpochMillis() { return epochMillis; }
+
+	/**
+	 * Year of the formatted date, or -1 if it could not be parsed.
+	 */
+	public int getYear() { return localDate == 0 ? -1 : localDate / 10000; }
+
+	/**
+	 * Month (1-12) of the formatted date, or -1 if it could not be parsed.
+	 */
+	public int getMonth() { return localDate == 0 ? -1 : localDate / 100 % 100; }
+
+	/**
+	 * Day of month of the formatted date, or -1 if it could not be parsed.
+	 */
+	public int getDay() { return localDate == 0 ? -1 : localDate % 100; }
+
+	/**
+	 * Formats the record as one CSV line in the column order of weatherHistory.csv,
+	 * quoting text that holds commas, quotes or line breaks.
+	 */
+	public String toCsvLine() {
+		return csvField(formattedDate) + "," +
+				csvField(summary) + "," +
+				csvField(precipType) + "," +
+				temperature + "," +
+				apparentTemperature + "," +
+				humidity + "," +
+				windSpeed + "," +
+				windBearing + "," +
+				visibility + "," +
+				loudCover + "," +
+				pressure + "," +
+				csvField(dailySummary);
+	}
+
+	/*
+	 * The value as an RFC 4180 field: quoted, with quotes doubled, only when it needs to be
+	 */
+	static String csvField(String value) {
+		if (value == null)
+			return "null";
+
+		for (int i = 0; i < value.length(); ++i) {
+			char c = value.charAt(i);
+			if (c == ',' || c == '"' || c == '\n' || c == '\r')
+				return '"' + value.replace("\"", "\"\"") + '"';
+		}
+		return value;
+	}
 
 	@Override
 	public String toString() {
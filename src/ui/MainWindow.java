@@ -2,19 +2,35 @@ package ui;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Comparator;
+import java.util.BitSet;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import javax.swing.*;
 import javax.swing.table.DefaultTableCellRenderer;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.io.File;
+import java.io.IOException;
+import java.util.stream.IntStream;
 
+import csv.CsvTailer;
+import csv.Exporter;
+import csv.LoadReport;
 import csv.Reader;
+import csv.Timestamps;
+import csv.WeatherColumnStore;
 import csv.WeatherRecord;
 import static csv.WeatherRecord.WeatherField.*;
 
+import algorithm.Query;
+import algorithm.QueryIndex;
+import algorithm.SortSpec;
+import algorithm.SortStats;
+import algorithm.SortedIndex;
+import algorithm.SortedIndexCache;
 import algorithm.WeatherRecordSorter;
 
 import org.jfree.chart.ChartFactory;
@@ -25,32 +41,52 @@ import org.jfree.data.category.DefaultCategoryDataset;
 import org.jfree.data.statistics.HistogramDataset;
 import org.jfree.data.statistics.HistogramType;
 
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
-import java.time.format.DateTimeParseException;
-import java.util.stream.Collectors;
-
 public class MainWindow extends JFrame {
+	private static final String DATA_FILE = "res/csv/weatherHistory.csv";
 	private int width = 1376;
 	private int height = 768;
 	private JTable table;
-	private ArrayList<WeatherRecord> weatherRecords;
-	private ArrayList<WeatherRecord> originalWeatherRecords; // Store original order
+	private WeatherColumnStore store; // Every row loaded or followed, in file order
+	private int[] order; // Rows of store shown, in display order
 	private WeatherRecordSorter recordSorter;
+	private final SortedIndexCache indexCache = new SortedIndexCache(); // Orders of the rows of store sorted so far
 	private WeatherTableModel tableModel;
 	private JButton sortButton;
 	private JButton randomButton; // Added randomButton
 	private JButton resetButton;  // Added resetButton
+	private JButton exportButton;
 	private JLabel timeLabel; // Added timeLabel
+	private JCheckBox metricsCheckBox; // Collect SortStats alongside the time
+	private JToggleButton followButton; // Merge rows appended to the CSV as they arrive
+	private CsvTailer tailer;
+	private long followFrom; // File offset the next tailer starts at
+	private SortSpec currentOrder; // Order of rows shown, null when it is not sorted
+	private final List<WeatherRecord> pendingRecords = new ArrayList<>(); // Appended rows waiting for a sort to finish
+	private boolean followReset; // The followed file was rewritten: pendingRecords replace every row
+	private int topLimit; // Rows shown when the view holds only the first rows of currentOrder, 0 for all
+	private JTextField filterField;
+	private Query filterQuery; // Rows shown must match it, null to show all
+	private QueryIndex queryIndex; // Over store, sharing indexCache; built once when the data is loaded
 
 	public MainWindow() {
 		setTitle("Weather Dataset");
 		setPreferredSize(new Dimension(width, height));
 		setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 
-		Reader reader = new Reader("res/csv/weatherHistory.csv");
-		weatherRecords = reader.readWeatherRecord();
-		originalWeatherRecords = new ArrayList<>(weatherRecords); // Initialize originalWeatherRecords
+		Reader reader = new Reader(DATA_FILE);
+		try {
+			store = reader.readColumnsCached(Runtime.getRuntime().availableProcessors());
+		} catch (IOException e) {
+			JOptionPane.showMessageDialog(null, "Could not read " + DATA_FILE + ": " + e.getMessage());
+			store = new WeatherColumnStore();
+		}
+		try {
+			followFrom = CsvTailer.completeLength(new File(DATA_FILE));
+		} catch (IOException e) {
+			followFrom = 0;
+		}
+		order = IntStream.range(0, store.size()).toArray(); // File order
+		queryIndex = new QueryIndex(store, indexCache); // Sorted indexes are built by the first filter that needs them
 
 		recordSorter = new WeatherRecordSorter();
 
@@ -66,6 +102,10 @@ public class MainWindow extends JFrame {
 		pack();
 		setLocationRelativeTo(null);
 		setVisible(true);
+
+		LoadReport report = reader.getLastReport();
+		if (report != null && (report.getRejected() > 0 || report.getSnapshotError() != null))
+			JOptionPane.showMessageDialog(this, DATA_FILE + ": " + report, "Load report", JOptionPane.WARNING_MESSAGE);
 	}
 
 	/**
@@ -99,7 +139,7 @@ public class MainWindow extends JFrame {
 
 		JLabel algorithmLabel = new JLabel("Algorithm:");
 		JComboBox<String> algorithmCombo = new JComboBox<>(new String[]{
-			"Quick", "Merge", "Shell", "Selection", "Sort", "Parallel Sort"
+			"Quick", "Merge", "Shell", "Selection", "Parallel Quick", "Parallel Merge", "Sort", "Parallel Sort", "Radix"
 		});
 
 		// New order selection dropdown
@@ -108,10 +148,35 @@ public class MainWindow extends JFrame {
 			"Ascending", "Descending"
 		});
 
+		// Optional secondary keys, compared when the previous fields are equal
+		JLabel thenByLabel = new JLabel("Then By:");
+		List<JComboBox<String>> fieldCombos = new ArrayList<>(List.of(sortByCombo));
+		List<JComboBox<String>> orderCombos = new ArrayList<>(List.of(orderCombo));
+		for (int i = 0; i < 2; i++) {
+			fieldCombos.add(new JComboBox<>(new String[]{
+				"None", "Temperature", "Apparent Temperature", "Humidity", "Wind Speed",
+				"Wind Bearing", "Visibility", "Cloud Cover", "Pressure",
+				"Formatted Date", "Summary", "Precip Type", "Daily Summary"
+			}));
+			orderCombos.add(new JComboBox<>(new String[]{
+				"Ascending", "Descending"
+			}));
+		}
+
+		// Top N rows of the order only, selected without a full sort; 0 shows every row
+		JLabel topLabel = new JLabel("Top:");
+		JSpinner topSpinner = new JSpinner(new SpinnerNumberModel(0, 0, Integer.MAX_VALUE, 10));
+		topSpinner.setToolTipText("Show only the first N rows of the order (0 = all)");
+
 		sortButton = new JButton("Sort");
 		randomButton = new JButton("Random"); // Initialize randomButton
 		resetButton = new JButton("Reset");   // Initialize resetButton
+		exportButton = new JButton("Export");
+		followButton = new JToggleButton("Follow");
 		timeLabel = new JLabel("Time: "); // Initialize timeLabel
+		filterField = new JTextField(24);
+		filterField.setToolTipText("e.g. temperature between -5 and 0 and summary starts 'Partly' (Enter applies, empty shows all)");
+		metricsCheckBox = new JCheckBox("Metrics");
 
 		sortPanel.add(sortByLabel);
 		sortPanel.add(sortByCombo);
@@ -122,12 +187,30 @@ public class MainWindow extends JFrame {
 		sortPanel.add(orderLabel);  // Add order label
 		sortPanel.add(orderCombo);  // Add order dropdown
 		sortPanel.add(Box.createHorizontalStrut(15)); // Spacer
+		sortPanel.add(thenByLabel);
+		for (int i = 1; i < fieldCombos.size(); i++) {
+			sortPanel.add(fieldCombos.get(i));
+			sortPanel.add(orderCombos.get(i));
+		}
+		sortPanel.add(Box.createHorizontalStrut(15)); // Spacer
+		sortPanel.add(topLabel);
+		sortPanel.add(topSpinner);
+		sortPanel.add(Box.createHorizontalStrut(15)); // Spacer
 		sortPanel.add(sortButton);
 		sortPanel.add(Box.createHorizontalStrut(15)); // Spacer
 		sortPanel.add(randomButton); // Add randomButton
 		sortPanel.add(Box.createHorizontalStrut(15)); // Spacer
 		sortPanel.add(resetButton);  // Add resetButton
 		sortPanel.add(Box.createHorizontalStrut(15)); // Spacer
+		sortPanel.add(exportButton);
+		sortPanel.add(Box.createHorizontalStrut(15)); // Spacer
+		sortPanel.add(followButton);
+		sortPanel.add(Box.createHorizontalStrut(15)); // Spacer
+		sortPanel.add(metricsCheckBox);
+		sortPanel.add(Box.createHorizontalStrut(15)); // Spacer
+		sortPanel.add(new JLabel("Filter:"));
+		sortPanel.add(filterField);
+		sortPanel.add(Box.createHorizontalStrut(15)); // Spacer
 		sortPanel.add(timeLabel); // Add timeLabel next to buttons
 
 		mainPanel.add(sortPanel, BorderLayout.SOUTH);
@@ -136,10 +219,11 @@ public class MainWindow extends JFrame {
 		sortButton.addActionListener(new ActionListener() {
 			@Override
 			public void actionPerformed(ActionEvent e) {
-				String sortBy = (String) sortByCombo.getSelectedItem();
+				SortSpec spec = buildSpec(fieldCombos, orderCombos);
 				String algorithm = (String) algorithmCombo.getSelectedItem();
-				String order = (String) orderCombo.getSelectedItem();  // Get selected order
-				sortData(sortBy, algorithm, order);
+				if (spec != null) {
+					sortData(spec, algorithm, (Integer) topSpinner.getValue());
+				}
 			}
 		});
 
@@ -159,11 +243,35 @@ public class MainWindow extends JFrame {
 			}
 		});
 
+		// Action listener for export button
+		exportButton.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				exportData();
+			}
+		});
+
+		// Action listener for filter field, on Enter
+		filterField.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				filterData(filterField.getText());
+			}
+		});
+
+		// Action listener for follow button
+		followButton.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				followFile(followButton.isSelected());
+			}
+		});
+
 		return mainPanel;
 	}
 
 	private void initializeTable() {
-		tableModel = new WeatherTableModel(weatherRecords);
+		tableModel = new WeatherTableModel(store, order);
 		table = new JTable(tableModel);
 		table.setFillsViewportHeight(true);
 
@@ -191,56 +299,37 @@ public class MainWindow extends JFrame {
 
 		for (Map.Entry<Integer, WeatherRecord.WeatherField> entry : columnToField.entrySet()) {
 			table.getColumnModel().getColumn(entry.getKey())
-				.setCellRenderer(new ChartRenderer(tableModel.getRecords(), entry.getValue()));
+				.setCellRenderer(new ChartRenderer(order, entry.getValue()));
 		}
 	}
 
-	private void sortData(String sortBy, String algorithm, String order) {
-		final Comparator<WeatherRecord> comparator;
-
-		switch (sortBy) {
-			case "Temperature":
-				comparator = Comparator.comparingDouble(WeatherRecord::getTemperature);
-				break;
-			case "Apparent Temperature":
-				comparator = Comparator.comparingDouble(WeatherRecord::getApparentTemperature);
-				break;
-			case "Humidity":
-				comparator = Comparator.comparingDouble(WeatherRecord::getHumidity);
-				break;
-			case "Wind Speed":
-				comparator = Comparator.comparingDouble(WeatherRecord::getWindSpeed);
-				break;
-			case "Wind Bearing":
-				comparator = Comparator.comparingDouble(WeatherRecord::getWindBearing);
-				break;
-			case "Visibility":
-				comparator = Comparator.comparingDouble(WeatherRecord::getVisibility);
-				break;
-			case "Cloud Cover":
-				comparator = Comparator.comparingDouble(WeatherRecord::getLoudCover); // Kept original method name
-				break;
-			case "Pressure":
-				comparator = Comparator.comparingDouble(WeatherRecord::getPressure);
-				break;
-			case "Formatted Date":
-				comparator = Comparator.comparing(WeatherRecord::getFormattedDate);
-				break;
-			case "Summary":
-				comparator = Comparator.comparing(WeatherRecord::getSummary, Comparator.nullsLast(String::compareTo));
-				break;
-			case "Precip Type":
-				comparator = Comparator.comparing(WeatherRecord::getPrecipType, Comparator.nullsLast(String::compareTo));
-				break;
-			case "Daily Summary":
-				comparator = Comparator.comparing(WeatherRecord::getDailySummary, Comparator.nullsLast(String::compareTo));
-				break;
-			default:
-				JOptionPane.showMessageDialog(this, "Unknown sort field: " + sortBy);
-				return;
+	/**
+	 * Builds the sort spec from the sort-by field and the optional then-by fields.
+	 *
+	 * @return The spec, or null if a field is unknown.
+	 */
+	private SortSpec buildSpec(List<JComboBox<String>> fieldCombos, List<JComboBox<String>> orderCombos) {
+		SortSpec spec = null;
+		for (int i = 0; i < fieldCombos.size(); i++) {
+			String name = (String) fieldCombos.get(i).getSelectedItem();
+			if ("None".equals(name)) {
+				continue;
+			}
+
+			WeatherRecord.WeatherField field = SortSpec.field(name);
+			if (field == null) {
+				JOptionPane.showMessageDialog(this, "Unknown sort field: " + name);
+				return null;
+			}
+			boolean descending = "Descending".equals(orderCombos.get(i).getSelectedItem());
+			spec = spec == null ? SortSpec.of(field, descending) : spec.then(field, descending);
 		}
+		return spec;
+	}
 
-		final Comparator<WeatherRecord> finalComparator = "Descending".equals(order) ? comparator.reversed() : comparator;
+	private void sortData(SortSpec spec, String algorithm, int top) {
+		// A top view holds only some rows, so the next query starts from all of them
+		final int[] source = topLimit > 0 ? IntStream.range(0, store.size()).toArray() : order;
 
 		sortButton.setEnabled(false);
 		randomButton.setEnabled(false);
@@ -249,40 +338,66 @@ public class MainWindow extends JFrame {
 
 		final String finalAlgorithm = algorithm;
 
+		recordSorter.setMetricsEnabled(metricsCheckBox.isSelected());
+
 		SwingWorker<Long, Void> sorter = new SwingWorker<>() {
 			private long elapsedTime;
+			private SortStats stats;
+			private boolean cached; // Read from indexCache instead of sorted
 
 			@Override
 			protected Long doInBackground() throws Exception {
-				final WeatherRecord[] recordsArray = weatherRecords.toArray(new WeatherRecord[0]);
+				// Sorted before, in this order or the opposite one: read the rows from the cache
+				SortedIndex index = indexCache.get(spec, finalAlgorithm);
+				if (index != null) {
+					long startTime = System.nanoTime();
+					order = index.toArray(top > 0 ? top : index.size());
+					elapsedTime = System.nanoTime() - startTime;
+					cached = true;
+					return elapsedTime;
+				}
+
+				int[] rows = source;
 
 				long startTime = System.nanoTime(); // Start timing
+				boolean sorted = true;
 
 				try {
-					switch (finalAlgorithm) {
-						case "Quick":
-						case "Merge":
-						case "Shell":
-						case "Selection":
-							recordSorter.sortRecords(recordsArray, finalComparator, finalAlgorithm);
-							break;
-						case "Sort":
-							Arrays.sort(recordsArray, finalComparator);
-							break;
-						case "Parallel Sort":
-							Arrays.parallelSort(recordsArray, finalComparator);
-							break;
-						default:
-							throw new IllegalArgumentException("Unknown sorting algorithm: " + finalAlgorithm);
+					if (top > 0) {
+						// Only the first rows are wanted: select them instead of sorting everything
+						String method = finalAlgorithm.startsWith("Parallel") ? "parallel heap"
+							: "Quick".equals(finalAlgorithm) ? "quickselect" : "heap";
+						rows = recordSorter.topRows(store, source, spec, top, method);
+					} else {
+						switch (finalAlgorithm) {
+							case "Quick":
+							case "Merge":
+							case "Shell":
+							case "Selection":
+							case "Parallel Quick":
+							case "Parallel Merge":
+							case "Sort":
+							case "Parallel Sort":
+							case "Radix":
+								rows = recordSorter.sortRows(store, source, spec, finalAlgorithm);
+								break;
+							default:
+								throw new IllegalArgumentException("Unknown sorting algorithm: " + finalAlgorithm);
+						}
 					}
 				} catch (IllegalArgumentException ex) {
 					JOptionPane.showMessageDialog(MainWindow.this, ex.getMessage());
+					sorted = false;
 				}
 
 				long endTime = System.nanoTime(); // End timing
 				elapsedTime = endTime - startTime;
+				stats = recordSorter.getLastStats();
+				if (sorted && top == 0) {
+					indexCache.put(spec, finalAlgorithm, rows);
+				}
 
-				weatherRecords = new ArrayList<>(Arrays.asList(recordsArray));
+				order = rows;
 				return elapsedTime;
 			}
 
@@ -291,16 +406,26 @@ public class MainWindow extends JFrame {
 				try {
 					long sortTime = get();
 					SwingUtilities.invokeLater(() -> {
-						tableModel.setRecords(weatherRecords);
+						tableModel.setView(store, order);
 						applyRenderers();
 						table.setRowHeight(0, 100);
 						table.repaint();
 						sortButton.setEnabled(true);
 						randomButton.setEnabled(true);
 						resetButton.setEnabled(true);
+						currentOrder = spec;
+						topLimit = top;
+						addFollowedRecords(List.of());
+						showFilter();
 
 						// Update the time label with elapsed time
-						timeLabel.setText("Time: " + sortTime + " ns");
+						timeLabel.setText("Time: " + sortTime + " ns" + (cached ? " (cached)" : ""));
+						if (stats != null) {
+							timeLabel.setText(timeLabel.getText() + " | " + stats);
+						}
+						if (metricsCheckBox.isSelected()) {
+							timeLabel.setText(timeLabel.getText() + " | " + indexCache);
+						}
 
 						// Update the chart
 						JFreeChart updatedChart = createYearlyCountsChart();
@@ -319,7 +444,233 @@ public class MainWindow extends JFrame {
 	}
 
 	/**
-	 * Shuffles the weatherRecords list into a random order.
+	 * Writes the records in their current order to a file chosen by the user,
+	 * as a binary snapshot when its name ends in .snapshot and as CSV otherwise.
+	 */
+	private void exportData() {
+		JFileChooser chooser = new JFileChooser(new File("."));
+		chooser.setSelectedFile(new File("weatherSorted.csv"));
+		if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION)
+			return;
+
+		File target = chooser.getSelectedFile();
+		Exporter exporter = new Exporter();
+		exporter.setParallelism(Runtime.getRuntime().availableProcessors());
+
+		long startTime = System.nanoTime();
+		try {
+			if (target.getName().endsWith(".snapshot"))
+				exporter.writeSnapshot(store, order, target);
+			else
+				exporter.writeCsv(store, order, target);
+		} catch (IOException ex) {
+			JOptionPane.showMessageDialog(this, "Could not export " + target + ": " + ex.getMessage());
+			return;
+		}
+		timeLabel.setText("Exported " + order.length + " rows in " + (System.nanoTime() - startTime) / 1_000_000 + " ms");
+	}
+
+	/**
+	 * Starts or stops following rows appended to the CSV. Following resumes
+	 * where it last stopped, or at the end of the file as it was loaded.
+	 */
+	private void followFile(boolean follow) {
+		if (!follow) {
+			if (tailer != null) {
+				followFrom = tailer.getPosition();
+				try {
+					tailer.close();
+				} catch (IOException ex) {
+					ex.printStackTrace();
+				}
+				tailer = null;
+			}
+			return;
+		}
+
+		try {
+			tailer = new CsvTailer(new File(DATA_FILE), followFrom, new CsvTailer.Listener() {
+				@Override
+				public void rowsAppended(List<WeatherRecord> records) {
+					SwingUtilities.invokeLater(() -> addFollowedRecords(records));
+				}
+
+				@Override
+				public void reset() {
+					SwingUtilities.invokeLater(() -> resetFollowedRecords());
+				}
+
+				@Override
+				public void failed(IOException e) {
+					SwingUtilities.invokeLater(() -> followFailed(e));
+				}
+			});
+			tailer.start();
+		} catch (IOException ex) {
+			JOptionPane.showMessageDialog(this, "Could not follow " + DATA_FILE + ": " + ex.getMessage());
+			tailer = null;
+			followButton.setSelected(false);
+		}
+	}
+
+	/**
+	 * The followed file was truncated or replaced. Rows waiting to be added are
+	 * dropped, and the rows the tailer reads next replace every row loaded.
+	 */
+	private void resetFollowedRecords() {
+		pendingRecords.clear();
+		followReset = true;
+		addFollowedRecords(List.of());
+	}
+
+	/**
+	 * Stops following after the tailer failed to read the file.
+	 */
+	private void followFailed(IOException e) {
+		if (tailer == null) {
+			return; // Already stopped
+		}
+		followButton.setSelected(false);
+		followFile(false);
+		JOptionPane.showMessageDialog(this, "Stopped following " + DATA_FILE + ": " + e.getMessage());
+	}
+
+	/**
+	 * Adds rows read by the tailer: merged into place when the table is sorted and
+	 * appended otherwise, with row-inserted events instead of a full refresh.
+	 * Rows that arrive while a sort, shuffle or reset runs wait for it to finish.
+	 */
+	private void addFollowedRecords(List<WeatherRecord> batch) {
+		pendingRecords.addAll(batch);
+		if (pendingRecords.isEmpty() && !followReset || !sortButton.isEnabled()) {
+			return; // Nothing new, or a worker still owns order
+		}
+
+		if (followReset) {
+			// Start over from an empty store; the file's rows arrive as pending rows
+			followReset = false;
+			store = new WeatherColumnStore();
+			order = new int[0];
+			topLimit = 0;
+			indexCache.invalidate();
+			queryIndex = new QueryIndex(store, indexCache);
+			tableModel.setView(store, order);
+			showFilter();
+			timeLabel.setText("Followed: " + DATA_FILE + " was rewritten, reloading it");
+			if (pendingRecords.isEmpty()) {
+				return;
+			}
+		}
+
+		List<WeatherRecord> added = new ArrayList<>(pendingRecords);
+		pendingRecords.clear();
+		int first = store.size();
+		for (WeatherRecord record : added) {
+			store.add(record);
+		}
+		store.compact(); // Renumber text codes here, before any worker or renderer reads them
+		indexCache.invalidate(); // Cached orders do not hold the new rows
+		if (topLimit > 0 && currentOrder == null) {
+			timeLabel.setText("Followed: " + added.size() + " new rows, Reset to show them");
+			return; // A shuffled top view has no place for new rows
+		}
+
+		long startTime = System.nanoTime();
+		int[] merged = Arrays.copyOf(order, order.length + added.size());
+		for (int i = 0; i < added.size(); ++i) {
+			merged[order.length + i] = first + i;
+		}
+		int[] positions;
+		if (currentOrder != null) {
+			positions = recordSorter.mergeRows(store, merged, order.length, currentOrder);
+		} else {
+			positions = IntStream.range(order.length, merged.length).toArray();
+		}
+
+		int shown = merged.length;
+		int kept = positions.length;
+		if (topLimit > 0 && shown > topLimit) {
+			// Keep the top view at topLimit rows: new rows past it are dropped, and so
+			// are the old rows they pushed out
+			kept = 0;
+			while (kept < positions.length && positions[kept] < topLimit) {
+				kept++;
+			}
+			merged = Arrays.copyOf(merged, topLimit);
+		}
+		order = merged;
+
+		if (filterQuery != null) {
+			showFilter(); // New rows may match, so filter again
+		} else {
+			tableModel.setRows(order);
+			tableModel.recordsInserted(Arrays.copyOf(positions, kept));
+			int before = shown - positions.length + kept;
+			if (before > order.length) {
+				tableModel.recordsDeleted(order.length, before - 1);
+			}
+		}
+
+		timeLabel.setText("Followed: " + added.size() + " new rows in " + (System.nanoTime() - startTime) + " ns");
+	}
+
+	/**
+	 * Shows only the records matching a query typed in the filter field, keeping
+	 * their current order; an empty query shows every record again.
+	 */
+	private void filterData(String text) {
+		Query query = null;
+		if (!text.isBlank()) {
+			try {
+				query = Query.parse(text);
+			} catch (IllegalArgumentException ex) {
+				JOptionPane.showMessageDialog(this, ex.getMessage());
+				return;
+			}
+		}
+
+		filterQuery = query;
+		if (!sortButton.isEnabled()) {
+			return; // The running worker applies it when done
+		}
+
+		if (filterQuery == null) {
+			tableModel.setView(store, order);
+			timeLabel.setText("Time: ");
+			return;
+		}
+
+		long startTime = System.nanoTime();
+		showFilter();
+		timeLabel.setText(filterQuery == null ? "Time: " : "Filter: " + (tableModel.getRowCount() - 1) + " of "
+			+ order.length + " rows in " + (System.nanoTime() - startTime) + " ns");
+	}
+
+	/**
+	 * Applies filterQuery to the rows shown. Matching rows come from binary
+	 * searches on the query index and go to the table as a row permutation in
+	 * the current order, so no row is copied or tested one by one.
+	 */
+	private void showFilter() {
+		if (filterQuery == null) {
+			return; // setView already shows every row
+		}
+
+		BitSet matches;
+		try {
+			matches = queryIndex.select(filterQuery);
+		} catch (IllegalArgumentException ex) {
+			JOptionPane.showMessageDialog(this, ex.getMessage());
+			filterQuery = null;
+			tableModel.setView(store, order);
+			return;
+		}
+
+		tableModel.setView(store, Arrays.stream(order).filter(matches::get).toArray());
+	}
+
+	/**
+	 * Shuffles the rows shown into a random order.
 	 */
 	private void randomizeData() {
 		sortButton.setEnabled(false);
@@ -330,15 +681,22 @@ public class MainWindow extends JFrame {
 		SwingWorker<Void, Void> randomizer = new SwingWorker<>() {
 			@Override
 			protected Void doInBackground() throws Exception {
-				// Shuffle the weatherRecords list
-				java.util.Collections.shuffle(weatherRecords);
+				// Fisher-Yates shuffle of a copy; the index cache may hold the rows shown
+				order = order.clone();
+				Random random = new Random();
+				for (int i = order.length - 1; i > 0; i--) {
+					int j = random.nextInt(i + 1);
+					int row = order[i];
+					order[i] = order[j];
+					order[j] = row;
+				}
 				return null;
 			}
 
 			@Override
 			protected void done() {
 				SwingUtilities.invokeLater(() -> {
-					tableModel.setRecords(weatherRecords);
+					tableModel.setView(store, order);
 					applyRenderers();
 					table.setRowHeight(0, 100);
 					table.repaint();
@@ -348,6 +706,9 @@ public class MainWindow extends JFrame {
 
 					// Reset the time label as no sorting was performed
 					timeLabel.setText("Time: ");
+					currentOrder = null;
+					addFollowedRecords(List.of());
+					showFilter();
 				});
 			}
 		};
@@ -356,7 +717,7 @@ public class MainWindow extends JFrame {
 	}
 
 	/**
-	 * Resets the weatherRecords list to its original order as loaded from the CSV.
+	 * Resets the rows shown to their original order as loaded from the CSV.
 	 */
 	private void resetData() {
 		sortButton.setEnabled(false);
@@ -367,15 +728,15 @@ public class MainWindow extends JFrame {
 		SwingWorker<Void, Void> resetter = new SwingWorker<>() {
 			@Override
 			protected Void doInBackground() throws Exception {
-				// Reset the weatherRecords to the original order
-				weatherRecords = new ArrayList<>(originalWeatherRecords);
+				// Reset to every row in file order
+				order = IntStream.range(0, store.size()).toArray();
 				return null;
 			}
 
 			@Override
 			protected void done() {
 				SwingUtilities.invokeLater(() -> {
-					tableModel.setRecords(weatherRecords);
+					tableModel.setView(store, order);
 					applyRenderers();
 					table.setRowHeight(0, 100);
 					table.repaint();
@@ -385,6 +746,10 @@ public class MainWindow extends JFrame {
 
 					// Reset the time label as no sorting was performed
 					timeLabel.setText("Time: ");
+					currentOrder = null; // File order, where appended rows go last
+					topLimit = 0;
+					addFollowedRecords(List.of());
+					showFilter();
 				});
 			}
 		};
@@ -398,21 +763,16 @@ public class MainWindow extends JFrame {
 	 * @return A Map where the key is the year and the value is the count of records.
 	 */
 	private Map<Integer, Long> getWeatherCountsPerYear() {
-		DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS Z");
-
-		return weatherRecords.stream()
-			.map(record -> {
-				try {
-					// Parse the formattedDate to extract the year
-					LocalDateTime dateTime = LocalDateTime.parse(record.getFormattedDate(), formatter);
-					return dateTime.getYear();
-				} catch (DateTimeParseException e) {
-					// Handle parsing exceptions if necessary
-					return null;
-				}
-			})
-			.filter(year -> year != null)
-			.collect(Collectors.groupingBy(year -> year, Collectors.counting()));
+		// Dates are nearly unique per row, so each row's local date is parsed on its own
+		Map<Integer, Long> countsPerYear = new HashMap<>();
+		for (int row : order) {
+			String date = store.getString(FORMATTED_DATE, row);
+			int localDate = date == null ? 0 : Timestamps.parseLocalDate(date);
+			if (localDate != 0) { // 0 marks an unparsable date
+				countsPerYear.merge(localDate / 10000, 1L, Long::sum);
+			}
+		}
+		return countsPerYear;
 	}
 
 	/**
@@ -449,10 +809,10 @@ public class MainWindow extends JFrame {
 		private final Map<WeatherRecord.WeatherField, JFreeChart> chartCache = new HashMap<>();
 		private final WeatherRecord.WeatherField field;
 
-		public ChartRenderer(ArrayList<WeatherRecord> records, WeatherRecord.WeatherField field) {
+		public ChartRenderer(int[] rows, WeatherRecord.WeatherField field) {
 			this.field = field;
 			if (!chartCache.containsKey(field)) {
-				chartCache.put(field, createHistogram(records, field));
+				chartCache.put(field, createHistogram(rows, field));
 			}
 		}
 
@@ -471,22 +831,14 @@ public class MainWindow extends JFrame {
 		}
 	}
 
-	private JFreeChart createHistogram(ArrayList<WeatherRecord> weatherRecords, WeatherRecord.WeatherField attribute) {
+	private JFreeChart createHistogram(int[] rows, WeatherRecord.WeatherField attribute) {
 		if (attribute == FORMATTED_DATE) return createYearlyCountsChart(); 
 
-		Map<WeatherRecord.WeatherField, java.util.function.Function<WeatherRecord, Double>> attributeMap = Map.of(
-			TEMPERATURE, WeatherRecord::getTemperature,
-			APPARENT_TEMPERATURE, WeatherRecord::getApparentTemperature,
-			HUMIDITY, WeatherRecord::getHumidity,
-			WIND_SPEED, WeatherRecord::getWindSpeed,
-			WIND_BEARING, WeatherRecord::getWindBearing,
-			VISIBILITY, WeatherRecord::getVisibility,
-			CLOUD_COVER, WeatherRecord::getLoudCover, // Kept original method name
-			PRESSURE, WeatherRecord::getPressure
-		);
-
-		java.util.function.Function<WeatherRecord, Double> attributeFunction = attributeMap.get(attribute);
-		double[] data = weatherRecords.stream().mapToDouble(attributeFunction::apply).toArray();
+		double[] column = store.getColumn(attribute);
+		double[] data = new double[rows.length];
+		for (int i = 0; i < rows.length; i++) {
+			data[i] = column[rows[i]];
+		}
 
 		HistogramDataset dataset = new HistogramDataset();
 		dataset.setType(HistogramType.FREQUENCY);
@@ -4,7 +4,9 @@ import javax.swing.table.AbstractTableModel;
 import java.util.ArrayList;
 
 import csv.Reader;
+import csv.WeatherColumns;
 import csv.WeatherRecord;
+import csv.WeatherRecord.WeatherField;
 import static csv.WeatherRecord.WeatherField.*;
 
 public class WeatherTableModel extends AbstractTableModel {
@@ -12,14 +14,27 @@ public class WeatherTableModel extends AbstractTableModel {
         "Formatted Date", "Summary", "Precip Type", "Temperature (C)", "Apparent Temperature (C)",
         "Humidity", "Wind Speed", "Wind Bearing", "Visibility", "Cloud Cover", "Pressure", "Daily Summary"
     };
+    private static final WeatherField[] FIELDS = WeatherField.values();
     private ArrayList<WeatherRecord> records;
 
+    // Columnar view: when set, rows are read from the store in the order given by rows
+    private WeatherColumns store;
+    private int[] rows;
+
     public WeatherTableModel(ArrayList<WeatherRecord> records) {
         this.records = records;
     }
 
+    public WeatherTableModel(WeatherColumns store, int[] rows) {
+        this.store = store;
+        this.rows = rows;
+    }
+
     @Override
     public int getRowCount() {
+        if (store != null) {
+            return rows.length + 1;
+        }
         return records.size() + 1; // +1 for the fixed chart row
     }
 
@@ -33,6 +48,9 @@ public class WeatherTableModel extends AbstractTableModel {
         if (rowIndex == 0) {
             return null; // Fixed chart row
         }
+        if (store != null) {
+            return columnIndex < FIELDS.length ? store.getValue(FIELDS[columnIndex], rows[rowIndex - 1]) : null;
+        }
         WeatherRecord record = records.get(rowIndex - 1);
         switch (columnIndex) {
             case 0: return record.getFormattedDate();
@@ -65,9 +83,41 @@ public class WeatherTableModel extends AbstractTableModel {
     // Method to update the records and notify the table
     public void setRecords(ArrayList<WeatherRecord> newRecords) {
         this.records = newRecords;
+        this.store = null;
+        this.rows = null;
         fireTableDataChanged();
     }
 
+    // Method to notify the table of records already inserted into the list at the given ascending indices
+    public void recordsInserted(int[] indices) {
+        // One event per run of consecutive indices, +1 for the fixed chart row
+        for (int i = 0; i < indices.length; ) {
+            int j = i + 1;
+            while (j < indices.length && indices[j] == indices[j - 1] + 1) {
+                j++;
+            }
+            fireTableRowsInserted(indices[i] + 1, indices[j - 1] + 1);
+            i = j;
+        }
+    }
+
+    // Method to notify the table of records already removed from the list, first to last inclusive
+    public void recordsDeleted(int first, int last) {
+        fireTableRowsDeleted(first + 1, last + 1);
+    }
+
+    // Method to show columnar data through a row permutation, without copying records
+    public void setView(WeatherColumns store, int[] rows) {
+        this.store = store;
+        this.rows = rows;
+        fireTableDataChanged();
+    }
+
+    // Method to replace the rows of the view after rows were merged in or dropped; report them with recordsInserted and recordsDeleted
+    public void setRows(int[] rows) {
+        this.rows = rows;
+    }
+
     // Getter for records
     public ArrayList<WeatherRecord> getRecords() {
         return records;